@@ -0,0 +1,82 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks of the Dxyn sprite path and the 00E0 clear path.
+ * Each program is a two instruction loop, the score is nanoseconds per loop (instruction + JP).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBenchmark {
+    /**
+     * 0x200: LD I, 0x20A
+     * 0x202: LD V0, x
+     * 0x204: LD V1, y
+     * 0x206: DRW V0, V1, 15
+     * 0x208: JP 0x206
+     * 0x20A: 15 bytes of sprite data
+     */
+    private static byte[] draw_program(int x, int y) {
+        return new byte[]{
+                (byte) 0xA2, (byte) 0x0A,
+                (byte) 0x60, (byte) x,
+                (byte) 0x61, (byte) y,
+                (byte) 0xD0, (byte) 0x1F,
+                (byte) 0x12, (byte) 0x06,
+                (byte) 0xFF, (byte) 0x81, (byte) 0xBD, (byte) 0xA5, (byte) 0xA5,
+                (byte) 0xBD, (byte) 0x81, (byte) 0xFF, (byte) 0x18, (byte) 0x3C,
+                (byte) 0x7E, (byte) 0xFF, (byte) 0x7E, (byte) 0x3C, (byte) 0x18
+        };
+    }
+
+    /**
+     * 0x200: CLS
+     * 0x202: JP 0x200
+     */
+    private static final byte[] CLEAR_PROGRAM = new byte[]{
+            (byte) 0x00, (byte) 0xE0,
+            (byte) 0x12, (byte) 0x00
+    };
+
+    private Emulator aligned;
+    private Emulator wrapping;
+    private Emulator clear;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        aligned = Emulator.of(draw_program(8, 8));
+        // Sprite crosses both the right and the bottom edge.
+        wrapping = Emulator.of(draw_program(60, 28));
+        clear = Emulator.of(CLEAR_PROGRAM);
+        // Run the LD instructions, so each benchmark invocation starts at the loop.
+        for (int i = 0; i < 3; i++) {
+            aligned.tick();
+            wrapping.tick();
+        }
+    }
+
+    @Benchmark
+    public void drw_aligned() {
+        aligned.tick();
+        aligned.tick();
+    }
+
+    @Benchmark
+    public void drw_wrapping() {
+        wrapping.tick();
+        wrapping.tick();
+    }
+
+    @Benchmark
+    public void cls() {
+        clear.tick();
+        clear.tick();
+    }
+}
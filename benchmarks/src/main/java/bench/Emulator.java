@@ -0,0 +1,272 @@
+package bench;
+
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Bridge to the emulator classes.
+ *
+ * JMH refuses benchmark classes in the default package, and classes in a named package can't
+ * reference the default package at compile time. So the emulator is reached through method handles,
+ * resolved once into static finals, which the JIT inlines like a direct call.
+ */
+final class Emulator {
+    private static final MethodHandle LOAD_ROM;
+    private static final MethodHandle NEW_DISPLAY;
+    private static final MethodHandle NEW_INPUT;
+    private static final MethodHandle NEW_CPU;
+    private static final MethodHandle TICK;
+    private static final MethodHandle SET_IDLE_SKIPPING;
+    private static final MethodHandle NEW_RECOMPILER;
+    private static final MethodHandle NEW_DECODE_CACHE;
+    private static final MethodHandle EXECUTE;
+    private static final MethodHandle HASH;
+    private static final MethodHandle NEW_RENDERER;
+    private static final MethodHandle RENDERER_UPDATE;
+    private static final MethodHandle RENDERER_DRAW;
+    private static final MethodHandle NEW_SAVE_STATE;
+    private static final MethodHandle CAPTURE;
+    private static final MethodHandle RESTORE;
+    private static final MethodHandle NEW_REWIND_BUFFER;
+    private static final MethodHandle PUSH;
+    private static final MethodHandle REWIND;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            ClassLoader loader = Emulator.class.getClassLoader();
+            Class<?> cpu = Class.forName("CPU", true, loader);
+            Class<?> display = Class.forName("Display", true, loader);
+            Class<?> input = Class.forName("Input", true, loader);
+            Class<?> headless = Class.forName("Headless", true, loader);
+            Class<?> renderer = Class.forName("Renderer", true, loader);
+            Class<?> recompiler = Class.forName("Recompiler", true, loader);
+            Class<?> decode_cache = Class.forName("DecodeCache", true, loader);
+            Class<?> engine = Class.forName("ExecutionEngine", true, loader);
+            Class<?> save_state = Class.forName("SaveState", true, loader);
+            Class<?> rewind_buffer = Class.forName("RewindBuffer", true, loader);
+
+            LOAD_ROM = lookup.findStatic(headless, "load_rom", MethodType.methodType(byte[].class, String.class));
+            NEW_DISPLAY = lookup.findConstructor(display, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            NEW_INPUT = lookup.findConstructor(input, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            NEW_CPU = lookup.findConstructor(cpu, MethodType.methodType(void.class, byte[].class, int.class, display, input))
+                    .asType(MethodType.methodType(Object.class, byte[].class, int.class, Object.class, Object.class));
+            TICK = lookup.findVirtual(cpu, "tick", MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(void.class, Object.class));
+            SET_IDLE_SKIPPING = lookup.findVirtual(cpu, "set_idle_skipping", MethodType.methodType(void.class, boolean.class))
+                    .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+            NEW_RECOMPILER = lookup.findConstructor(recompiler, MethodType.methodType(void.class, cpu))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            NEW_DECODE_CACHE = lookup.findConstructor(decode_cache, MethodType.methodType(void.class, cpu))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            EXECUTE = lookup.findVirtual(engine, "execute", MethodType.methodType(int.class, int.class))
+                    .asType(MethodType.methodType(int.class, Object.class, int.class));
+            HASH = lookup.findVirtual(display, "hash", MethodType.methodType(long.class))
+                    .asType(MethodType.methodType(long.class, Object.class));
+            NEW_RENDERER = lookup.findConstructor(renderer, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            RENDERER_UPDATE = lookup.findVirtual(renderer, "update", MethodType.methodType(void.class, display, long.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class, long.class));
+            RENDERER_DRAW = lookup.findVirtual(renderer, "draw", MethodType.methodType(void.class, Graphics.class, int.class, int.class, GraphicsConfiguration.class))
+                    .asType(MethodType.methodType(void.class, Object.class, Graphics.class, int.class, int.class, GraphicsConfiguration.class));
+            NEW_SAVE_STATE = lookup.findConstructor(save_state, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            CAPTURE = lookup.findVirtual(save_state, "capture", MethodType.methodType(void.class, cpu))
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            RESTORE = lookup.findVirtual(save_state, "restore", MethodType.methodType(void.class, cpu))
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            NEW_REWIND_BUFFER = lookup.findConstructor(rewind_buffer, MethodType.methodType(void.class, int.class, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class, int.class));
+            PUSH = lookup.findVirtual(rewind_buffer, "push", MethodType.methodType(void.class, cpu))
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            REWIND = lookup.findVirtual(rewind_buffer, "rewind", MethodType.methodType(int.class, cpu, int.class))
+                    .asType(MethodType.methodType(int.class, Object.class, Object.class, int.class));
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final Object display;
+    final Object cpu;
+    private Object engine;
+
+    private Emulator(byte[] program) {
+        try {
+            this.display = (Object) NEW_DISPLAY.invokeExact();
+            Object input = (Object) NEW_INPUT.invokeExact();
+            this.cpu = (Object) NEW_CPU.invokeExact(program, program.length, display, input);
+            this.engine = cpu;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads a ROM from a file, or from the emulator classpath (e.g. "other_roms/pong2.ch8").
+     */
+    static Emulator load(String rom) {
+        try {
+            return new Emulator((byte[]) LOAD_ROM.invokeExact(rom));
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Runs a raw program, loaded at 0x200.
+     */
+    static Emulator of(byte[] program) {
+        return new Emulator(program);
+    }
+
+    void tick() {
+        try {
+            TICK.invokeExact(cpu);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Enables or disables skipping idle loops.
+     */
+    Emulator use_idle_skipping(boolean idle_skipping) {
+        try {
+            SET_IDLE_SKIPPING.invokeExact(cpu, idle_skipping);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Selects the execution engine: "interpreter" (the CPU itself), "cache" (DecodeCache) or "recompiler".
+     */
+    Emulator use_engine(String name) {
+        try {
+            this.engine = switch (name) {
+                case "interpreter" -> cpu;
+                case "cache" -> (Object) NEW_DECODE_CACHE.invokeExact(cpu);
+                case "recompiler" -> (Object) NEW_RECOMPILER.invokeExact(cpu);
+                default -> throw new IllegalArgumentException("Unknown engine: " + name);
+            };
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    /**
+     * Executes a batch of instructions with the current engine.
+     */
+    int execute(int budget) {
+        try {
+            return (int) EXECUTE.invokeExact(engine, budget);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    long hash() {
+        try {
+            return (long) HASH.invokeExact(display);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Object new_renderer() {
+        try {
+            return (Object) NEW_RENDERER.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies the rows of the display into the renderer's raster, bit N of rows is row N.
+     */
+    void update(Object renderer, long rows) {
+        try {
+            RENDERER_UPDATE.invokeExact(renderer, display, rows);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Draws the renderer's image scaled, without an accelerated image.
+     */
+    static void draw(Object renderer, Graphics g, int width, int height) {
+        try {
+            RENDERER_DRAW.invokeExact(renderer, g, width, height, (GraphicsConfiguration) null);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Object new_save_state() {
+        try {
+            return (Object) NEW_SAVE_STATE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Captures the machine state into the save state.
+     */
+    void capture(Object save_state) {
+        try {
+            CAPTURE.invokeExact(save_state, cpu);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Puts the machine back in the state of the save state.
+     */
+    void restore(Object save_state) {
+        try {
+            RESTORE.invokeExact(save_state, cpu);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Object new_rewind_buffer(int capacity, int keyframe_interval) {
+        try {
+            return (Object) NEW_REWIND_BUFFER.invokeExact(capacity, keyframe_interval);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records the machine state as the newest frame of the rewind buffer.
+     */
+    void push(Object rewind_buffer) {
+        try {
+            PUSH.invokeExact(rewind_buffer, cpu);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Steps the machine back by count frames of the rewind buffer.
+     */
+    int rewind(Object rewind_buffer, int count) {
+        try {
+            return (int) REWIND.invokeExact(rewind_buffer, cpu, count);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
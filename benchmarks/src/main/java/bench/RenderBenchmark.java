@@ -0,0 +1,65 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Framebuffer to image conversion, the work Window.paint does for every repaint:
+ * copying the display into the renderer's raster, and drawing the raster scaled.
+ * Renders into an offscreen image, so it runs without a display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 320;
+
+    private Emulator emulator;
+    private Object renderer;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Run until invaders shows its title screen, so the framebuffer is not empty.
+        emulator = Emulator.load("other_roms/invaders.ch8");
+        for (int i = 0; i < 200_000; i++)
+            emulator.tick();
+
+        renderer = Emulator.new_renderer();
+        emulator.update(renderer, -1L);
+
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tear_down() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public void update_raster() {
+        emulator.update(renderer, -1L);
+    }
+
+    @Benchmark
+    public BufferedImage draw_scaled() {
+        Emulator.draw(renderer, graphics, WIDTH, HEIGHT);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage update_and_draw() {
+        emulator.update(renderer, -1L);
+        Emulator.draw(renderer, graphics, WIDTH, HEIGHT);
+        return image;
+    }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw throughput of the bundled ROMs, per execution engine. The score is instructions per second.
+ * Idle loops run every pass: skipping them would count instructions that never execute.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RomBenchmark {
+    private static final int TICKS = 1000;
+
+    @Param({
+            "other_roms/pong.ch8",
+            "other_roms/pong2.ch8",
+            "other_roms/tetris.ch8",
+            "other_roms/invaders.ch8",
+            "other_roms/IBM Logo.ch8",
+            "test_rom/test_opcode.ch8"
+    })
+    public String rom;
+
+    @Param({"interpreter", "cache", "recompiler"})
+    public String engine;
+
+    private Emulator emulator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emulator = Emulator.load(rom).use_engine(engine).use_idle_skipping(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public int instructions() {
+        return emulator.execute(TICKS);
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of capturing and restoring a save state (67,676 bytes: registers, stack, the 64 KB RAM, both display planes,
+ * random state), and of recording and rewinding frames with a RewindBuffer.
+ * Measured on tetris with the interpreter: capture about 2 us, restore 3.5 us, push 4.3 us, push_and_rewind 10 us.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveStateBenchmark {
+    @Param({"other_roms/tetris.ch8"})
+    public String rom;
+
+    private Emulator emulator;
+    private Object save_state;
+    private Object rewind_buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        emulator = Emulator.load(rom);
+        // Get past the title screen, so RAM and display hold a game in progress.
+        emulator.execute(100_000);
+        save_state = Emulator.new_save_state();
+        emulator.capture(save_state);
+
+        // 10 seconds, a keyframe every 3 seconds, filled with frames of the game.
+        rewind_buffer = Emulator.new_rewind_buffer(600, 180);
+        for (int frame = 0; frame < 600; frame++) {
+            emulator.execute(10);
+            emulator.push(rewind_buffer);
+        }
+    }
+
+    @Benchmark
+    public Object capture() {
+        emulator.capture(save_state);
+        return save_state;
+    }
+
+    @Benchmark
+    public Object restore() {
+        emulator.restore(save_state);
+        return save_state;
+    }
+
+    /**
+     * Records a frame (a delta against its keyframe, most of the time).
+     */
+    @Benchmark
+    public Object push() {
+        emulator.push(rewind_buffer);
+        return rewind_buffer;
+    }
+
+    /**
+     * Records a frame, then steps back one frame, so the buffer keeps its size.
+     */
+    @Benchmark
+    public int push_and_rewind() {
+        emulator.push(rewind_buffer);
+        return emulator.rewind(rewind_buffer, 1);
+    }
+}
@@ -0,0 +1,139 @@
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays the Beeper's samples on the sound card.
+ * The emulation thread copies each frame of samples into a preallocated ring and returns at once, a daemon thread
+ * moves them from the ring to a SourceDataLine, and that thread is the only one ever blocked by the device.
+ * When the ring runs dry (emulation late or idle) the audio thread parks until the next chunk is written,
+ * so the queue never grows past what the emulation produced, and nothing is inserted in the middle of a beep.
+ * When the ring is full (device slower than the emulation) the frame is dropped.
+ */
+public class AudioLine implements AudioSink, AutoCloseable {
+    // Device buffer, in frames. Smaller means less latency, but more underruns on a busy machine.
+    public static final int DEFAULT_LINE_FRAMES = 3;
+
+    // About 90 ms of samples between the emulation and the device.
+    private static final int RING_BYTES = 8192;
+    private static final int RING_MASK = RING_BYTES - 1;
+    // Bytes moved to the device at a time, a third of a frame.
+    private static final int CHUNK_BYTES = Beeper.BYTES_PER_FRAME / 3;
+
+    private final SourceDataLine line;
+    private final byte[] ring = new byte[RING_BYTES];
+    // Next byte to write, only written by the emulation thread.
+    private final AtomicLong tail = new AtomicLong();
+    // Next byte to play, only written by the audio thread.
+    private final AtomicLong head = new AtomicLong();
+
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * Counters, each written by a single thread.
+     */
+    private volatile long dropped_frames;   // Frames not written, the ring was full
+    private volatile long underruns;        // Times the device ran dry while playing
+
+    /**
+     * Opens the default audio device.
+     * @throws LineUnavailableException If there is no audio device, or it's in use.
+     */
+    public static AudioLine open() throws LineUnavailableException {
+        return open(DEFAULT_LINE_FRAMES);
+    }
+
+    /**
+     * @param line_frames Size of the device buffer, in frames of samples.
+     */
+    public static AudioLine open(int line_frames) throws LineUnavailableException {
+        SourceDataLine line = AudioSystem.getSourceDataLine(Beeper.FORMAT);
+        line.open(Beeper.FORMAT, line_frames * Beeper.BYTES_PER_FRAME);
+        return new AudioLine(line);
+    }
+
+    /**
+     * @param line An open line, in Beeper.FORMAT. Started here.
+     */
+    AudioLine(SourceDataLine line) {
+        this.line = line;
+        line.start();
+        thread = new Thread(this::run, "audio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues the samples for the device. Never blocks.
+     */
+    @Override
+    public void write(byte[] samples, int offset, int length) {
+        long t = tail.get();
+        if (RING_BYTES - (t - head.getAcquire()) < length) {
+            dropped_frames++;
+            return;
+        }
+        int index = (int) t & RING_MASK;
+        int first = Math.min(length, RING_BYTES - index);
+        System.arraycopy(samples, offset, ring, index, first);
+        System.arraycopy(samples, offset + first, ring, 0, length - first);
+        // Release: the audio thread that sees the new tail sees the samples.
+        tail.setRelease(t + length);
+        LockSupport.unpark(thread);
+    }
+
+    private void run() {
+        byte[] chunk = new byte[CHUNK_BYTES];
+        boolean playing = false;
+        while (running) {
+            long h = head.get();
+            if (tail.getAcquire() - h < CHUNK_BYTES) {
+                // Woken by write and close. The permit of an unpark before the park isn't lost.
+                LockSupport.park(this);
+                continue;
+            }
+            int index = (int) h & RING_MASK;
+            int first = Math.min(CHUNK_BYTES, RING_BYTES - index);
+            System.arraycopy(ring, index, chunk, 0, first);
+            System.arraycopy(ring, 0, chunk, first, CHUNK_BYTES - first);
+            head.setRelease(h + CHUNK_BYTES);
+
+            // The device played everything it had before this chunk came.
+            if (playing && line.available() >= line.getBufferSize())
+                underruns++;
+            playing = true;
+            // Blocks until the device has room, this is what paces the thread.
+            line.write(chunk, 0, CHUNK_BYTES);
+        }
+    }
+
+    /**
+     * Stops the audio thread and closes the device.
+     */
+    @Override
+    public void close() {
+        running = false;
+        // Wakes the audio thread if it's parked, or blocked in write.
+        LockSupport.unpark(thread);
+        line.close();
+    }
+
+    public long get_dropped_frames() {
+        return dropped_frames;
+    }
+
+    public long get_underruns() {
+        return underruns;
+    }
+
+    /**
+     * Time from writing a sample to hearing it: the samples queued in the ring and in the device buffer.
+     */
+    public double get_latency_millis() {
+        long queued = tail.get() - head.get() + line.getBufferSize() - line.available();
+        return queued / 2 * 1000.0 / Beeper.SAMPLE_RATE;
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Receives the samples of each 60 Hz frame from the Beeper: signed 16 bit little endian mono PCM, at Beeper.SAMPLE_RATE.
+ * Called on the emulation thread, so implementations must not block.
+ */
+public interface AudioSink {
+    /**
+     * Sink that ignores all samples.
+     */
+    AudioSink NONE = (samples, offset, length) -> {};
+
+    /**
+     * @param samples Only valid during the call, copy what must be kept.
+     * @param length In bytes, two per sample.
+     */
+    void write(byte[] samples, int offset, int length);
+}
@@ -0,0 +1,212 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many independent headless emulators in parallel, one job per ROM, input movie and seed.
+ * Each job has its own CPU, RAM, display, keypad and random seed, nothing is shared but the ROM bytes (read only),
+ * the input movies (read only) and the Decoder table, so jobs scale with the number of cores.
+ * Results are written to a tab separated file as jobs finish, one line per job:
+ * rom, movie, seed, engine, instructions per frame, frames, cycles, wall time, framebuffer hash, exit reason.
+ *
+ * Usage: BatchRunner <rom or directory>... [--movie FILE]... [--seeds N] [--frames N] [--ipf N] [--engine interpreter|cache|recompiler]
+ *                    [--threads N] [--out FILE] [--index FILE]
+ * Directories run every .ch8 file in them and their subdirectories, through a RomLibrary. With --index the library
+ * keeps its index in FILE, so later batches don't hash the ROMs again, and ROMs run at the instructions per frame
+ * recommended in the index unless --ipf is given. Seeds are 0 to N-1. Without --movie, runs have no input.
+ * A movie only replays the same run with the seed and instructions per frame it was recorded with: its jobs use those,
+ * one job per ROM, and an --ipf other than the movie's is an error.
+ */
+public class BatchRunner {
+    /**
+     * @param movie Keys to replay, may be null.
+     */
+    public record Job(String rom, byte[] program, int instructions_per_frame, String movie_name, InputMovie movie, long seed) {
+    }
+
+    /**
+     * @param exit "completed", or the exception that stopped the run.
+     */
+    public record Result(Job job, long frames, long cycles, long nanos, long hash, String exit) {
+    }
+
+    private final long frames;
+    private final String engine_name;
+
+    public BatchRunner(long frames, String engine_name) {
+        this.frames = frames;
+        this.engine_name = engine_name;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> roms = new ArrayList<>();
+        List<String> movies = new ArrayList<>();
+        int seeds = 1;
+        long frames = 3600;
+        // Not given: the ROM's recommended value, or the default.
+        int instructions_per_frame = 0;
+        String engine_name = "interpreter";
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out_path = "results.tsv";
+        String index_path = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--movie" -> movies.add(args[++i]);
+                case "--seeds" -> seeds = Integer.parseInt(args[++i]);
+                case "--frames" -> frames = Long.parseLong(args[++i]);
+                case "--ipf" -> instructions_per_frame = Integer.parseInt(args[++i]);
+                case "--engine" -> engine_name = args[++i];
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--out" -> out_path = args[++i];
+                case "--index" -> index_path = args[++i];
+                default -> roms.add(args[i]);
+            }
+        }
+        if (roms.isEmpty()) {
+            System.err.println("Usage: BatchRunner <rom or directory>... [--movie FILE]... [--seeds N] [--frames N] [--ipf N] [--engine interpreter|cache|recompiler] [--threads N] [--out FILE] [--index FILE]");
+            System.exit(1);
+        }
+
+        List<InputMovie> loaded_movies = new ArrayList<>();
+        for (String movie : movies) {
+            InputMovie loaded = InputMovie.read(Path.of(movie));
+            if (instructions_per_frame > 0 && instructions_per_frame != loaded.get_instructions_per_frame()) {
+                System.err.println("--ipf " + instructions_per_frame + " conflicts with movie " + movie
+                        + ", recorded at " + loaded.get_instructions_per_frame() + " instructions per frame");
+                System.exit(1);
+            }
+            loaded_movies.add(loaded);
+        }
+        if (movies.isEmpty()) {
+            movies.add("-");
+            loaded_movies.add(null);
+        }
+
+        RomLibrary library = new RomLibrary(index_path == null ? null : Path.of(index_path));
+        List<Job> jobs = new ArrayList<>();
+        for (String rom_path : roms) {
+            if (!Files.exists(Path.of(rom_path))) {
+                // Classpath resource, not part of the library.
+                byte[] program = Headless.load_rom(rom_path);
+                int ipf = instructions_per_frame > 0 ? instructions_per_frame : Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+                add_jobs(jobs, rom_path, program, ipf, movies, loaded_movies, seeds);
+                continue;
+            }
+            for (RomLibrary.Rom rom : library.scan(Path.of(rom_path))) {
+                int ipf = instructions_per_frame > 0 ? instructions_per_frame
+                        : rom.instructions_per_frame_or(Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+                add_jobs(jobs, rom.path().toString(), library.load(rom), ipf, movies, loaded_movies, seeds);
+            }
+        }
+        library.save();
+
+        BatchRunner runner = new BatchRunner(frames, engine_name);
+        long start = System.nanoTime();
+        List<Result> results;
+        try (BufferedWriter out = Files.newBufferedWriter(Path.of(out_path))) {
+            out.write("rom\tmovie\tseed\tengine\tipf\tframes\tcycles\twall_ms\thash\texit");
+            out.newLine();
+            results = runner.run_all(jobs, threads, out);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long cycles = 0;
+        long failed = 0;
+        for (Result result : results) {
+            cycles += result.cycles();
+            if (!result.exit().equals("completed"))
+                failed++;
+        }
+        double seconds = elapsed / 1e9;
+        System.out.printf("jobs=%d failed=%d threads=%d cycles=%d time=%.3fs ips=%.0f ips/thread=%.0f jobs/s=%.1f results=%s%n",
+                results.size(), failed, threads, cycles, seconds, cycles / seconds, cycles / seconds / threads,
+                results.size() / seconds, out_path);
+        System.out.printf("roms hashed=%d cached=%d%n", library.get_hashed(), library.get_cached());
+    }
+
+    /**
+     * Adds the jobs of a ROM: one per seed without a movie, and one per movie, with the movie's seed and instructions per frame.
+     */
+    private static void add_jobs(List<Job> jobs, String rom, byte[] program, int instructions_per_frame,
+                                 List<String> movies, List<InputMovie> loaded_movies, int seeds) {
+        for (int i = 0; i < movies.size(); i++) {
+            InputMovie movie = loaded_movies.get(i);
+            if (movie != null) {
+                jobs.add(new Job(rom, program, movie.get_instructions_per_frame(), movies.get(i), movie, movie.get_seed()));
+                continue;
+            }
+            for (int seed = 0; seed < seeds; seed++)
+                jobs.add(new Job(rom, program, instructions_per_frame, movies.get(i), null, seed));
+        }
+    }
+
+    /**
+     * Runs the jobs on a pool of the given number of threads, writing each result line to out as soon as it's known.
+     * @return The results, in the order of the jobs.
+     */
+    public List<Result> run_all(List<Job> jobs, int threads, BufferedWriter out) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(jobs.size());
+            for (Job job : jobs) {
+                futures.add(pool.submit(() -> {
+                    Result result = run(job);
+                    write(out, result);
+                    return result;
+                }));
+            }
+
+            List<Result> results = new ArrayList<>(jobs.size());
+            for (Future<Result> future : futures)
+                results.add(future.get());
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs a single job to the end, on the calling thread.
+     */
+    public Result run(Job job) {
+        Display display = new Display();
+        CPU cpu = new CPU(job.program(), job.program().length, display, new Input(), job.seed());
+        ExecutionEngine engine = Headless.create_engine(engine_name, cpu);
+        FramePresenter presenter = new FramePresenter(display, DisplaySink.NONE);
+        Scheduler scheduler = new Scheduler(cpu, engine, presenter, job.instructions_per_frame());
+        scheduler.set_replay(job.movie());
+
+        String exit = "completed";
+        long start = System.nanoTime();
+        try {
+            scheduler.run_frames(frames);
+        } catch (RuntimeException e) {
+            exit = e.toString();
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Result(job, scheduler.get_frames(), scheduler.get_instructions(), elapsed, display.hash(), exit);
+    }
+
+    private void write(BufferedWriter out, Result result) {
+        String line = String.format("%s\t%s\t%d\t%s\t%d\t%d\t%d\t%.3f\t%016X\t%s",
+                result.job().rom(), result.job().movie_name(), result.job().seed(), engine_name, result.job().instructions_per_frame(),
+                result.frames(), result.cycles(),
+                result.nanos() / 1e6, result.hash(), result.exit().replace('\t', ' ').replace('\n', ' '));
+        synchronized (out) {
+            try {
+                out.write(line);
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
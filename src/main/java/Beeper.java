@@ -0,0 +1,83 @@
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Turns the sound timer into samples: a square wave while the timer counts down, silence otherwise.
+ * The wave is rendered once, a period plus a frame long, so a frame of samples at any phase is a single copy out of it.
+ * Called once per 60 Hz frame by the Scheduler, it never allocates and never blocks.
+ */
+public class Beeper {
+    public static final int SAMPLE_RATE = 44100;
+    public static final int SAMPLES_PER_FRAME = SAMPLE_RATE / Scheduler.FRAMES_PER_SECOND;
+    public static final int BYTES_PER_FRAME = SAMPLES_PER_FRAME * 2;
+    public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+
+    // A period of exactly 100 samples.
+    public static final int DEFAULT_FREQUENCY = 441;
+    // A quarter of full scale, loud enough without clipping anything mixed with it.
+    private static final short DEFAULT_AMPLITUDE = 8192;
+
+    private final AudioSink sink;
+    private final byte[] wave;
+    private final byte[] silence = new byte[BYTES_PER_FRAME];
+    private final int period;
+    // Sample of the wave the next frame starts at, so the tone stays continuous across frames.
+    private int phase;
+
+    /**
+     * Counters
+     */
+    private long frames;
+    private long beep_frames;
+
+    public Beeper(AudioSink sink) {
+        this(sink, DEFAULT_FREQUENCY, DEFAULT_AMPLITUDE);
+    }
+
+    /**
+     * @param frequency Of the tone in Hz.
+     */
+    public Beeper(AudioSink sink, int frequency, short amplitude) {
+        if (frequency <= 0 || frequency > SAMPLE_RATE / 2)
+            throw new IllegalArgumentException("Frequency must be between 1 and " + SAMPLE_RATE / 2 + " Hz, got: " + frequency);
+        this.sink = sink;
+        this.period = SAMPLE_RATE / frequency;
+        this.wave = new byte[(period + SAMPLES_PER_FRAME) * 2];
+        for (int i = 0; i < period + SAMPLES_PER_FRAME; i++) {
+            short sample = (i % period) < period / 2 ? amplitude : (short) -amplitude;
+            wave[i * 2] = (byte) sample;
+            wave[i * 2 + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * Writes the samples of one frame to the sink. Called once at the end of every frame.
+     * @param sound_on True if the sound timer was running during the frame.
+     */
+    public void end_frame(boolean sound_on) {
+        frames++;
+        if (sound_on) {
+            sink.write(wave, phase * 2, BYTES_PER_FRAME);
+            phase = (phase + SAMPLES_PER_FRAME) % period;
+            beep_frames++;
+        } else {
+            sink.write(silence, 0, BYTES_PER_FRAME);
+            // Each beep starts at the beginning of a period.
+            phase = 0;
+        }
+    }
+
+    public AudioSink get_sink() {
+        return sink;
+    }
+
+    public long get_frames() {
+        return frames;
+    }
+
+    /**
+     * Frames in which the tone sounded.
+     */
+    public long get_beep_frames() {
+        return beep_frames;
+    }
+}
@@ -1,16 +1,16 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Random;
 
-public class CPU {
+public class CPU implements ExecutionEngine {
     /**
      * Registers
      */
     private final byte[] registers = new byte[16];  // General purpose registers
-    private short I;                                // Index Register
-    private short PC;                               // Program Counter
+    private int I;                                  // Index Register, 0x0000 to 0xFFFF
+    private int PC;                                 // Program Counter, 0x0000 to 0xFFFF
     private byte SP;                                // Stack Pointer
     // TODO: Read about VF register
     private short VF;                               // Variable Flag register
@@ -22,489 +22,959 @@ public class CPU {
     private byte sound_timer;
 
     /**
-     * RAM
+     * RAM, the 64 KB address space of XO-CHIP. CHIP-8 programs only use the first 4 KB.
      */
-    private final byte[] RAM = new byte[4096];
+    public static final int MEMORY_SIZE = 0x10000;
+    private final byte[] RAM = new byte[MEMORY_SIZE];
 
     /**
      * Stack
      */
     private final short[] stack = new short[16];
 
-    private boolean[] keypad = new boolean[16];
+    // Keys as seen by the program. Latched from the input (or an input movie) once per frame.
+    private final boolean[] keypad = new boolean[16];
+
+    // SUPER-CHIP RPL user flags (Fx75, Fx85).
+    private final byte[] flags = new byte[16];
+
+    // Fx0A: no instruction executes until a key is down, then the key goes into register wait_register.
+    private boolean waiting_for_key;
+    private int wait_register;
 
     private static final Logger logger = LoggerFactory.getLogger(CPU.class);
 
     // Connected display, CPU will manipulate pixels.
     private final Display display;
-    // Control the window (java swing)
-    private final Window window;
 
-    private final Random random;
+    private final Rng random;
 
     private final Input input;
 
+    // Notified on RAM writes, may be null.
+    private MemoryListener memory_listener;
+
+    // Records executed instructions, may be null.
+    private TraceRecorder trace;
+
+    // Counts executed addresses and samples the call stack, may be null.
+    private Profiler profiler;
+
+    /**
+     * Idle loops: a backward jump over a loop that only reads the delay timer and the keys (Fx07, 6xkk, skips,
+     * Ex9E, ExA1). Both only change between frames, so once a pass of the loop leaves the registers unchanged,
+     * the loop repeats the same pass until the end of the frame: engines skip those passes instead of running them.
+     */
+    private static final int MAX_IDLE_LOOP = 16;    // Instructions, including the jump
+    private static final byte LOOP_UNKNOWN = 0;
+    private static final byte LOOP_PURE = 1;
+    private static final byte LOOP_IMPURE = 2;
+    // Kind of the loop closed by the jump at each address. Reset when the loop's memory is written.
+    private final byte[] loop_kinds = new byte[MEMORY_SIZE];
+    // Registers of a simulated pass of a loop
+    private final byte[] loop_registers = new byte[16];
+    // Instructions per pass of the idle loop whose jump just executed, 0 if none. Consumed by skip_idle.
+    private int idle_pass;
+    private long skipped_instructions;
+    private boolean idle_skipping = true;
+
+    // Counters exposed over JMX, null unless Metrics.ENABLED.
+    private final Metrics metrics = Metrics.ENABLED ? new Metrics() : null;
+
+    // Seed of the random number generator (Cxkk), unless given.
+    public static final long DEFAULT_SEED = 123;
+
+    // Programs are loaded here, below is the interpreter area (fonts).
+    public static final int PROGRAM_START = 0x200;
+    public static final int FONT_ADDRESS = 0x50;
+    public static final int BIG_FONT_ADDRESS = 0xA0;
+    public static final int MAX_PROGRAM_SIZE = MEMORY_SIZE - PROGRAM_START;
+
     /**
      * Creates new Chip-8 CPU.
      * Address 0x200 is start of the program in memory.
      */
-    public CPU(byte[] rom_program, int program_length, Display display, Window window, Input input) {
+    public CPU(byte[] rom_program, int program_length, Display display, Input input) {
+        this(rom_program, program_length, display, input, DEFAULT_SEED);
+    }
+
+    /**
+     * @param seed Seed of the random number generator, runs with the same seed and input are identical.
+     * @throws IllegalArgumentException If the program doesn't fit in RAM.
+     */
+    public CPU(byte[] rom_program, int program_length, Display display, Input input, long seed) {
+        if (program_length < 0 || program_length > rom_program.length)
+            throw new IllegalArgumentException("Program length must be between 0 and " + rom_program.length + ", got: " + program_length);
+        if (program_length > MAX_PROGRAM_SIZE)
+            throw new IllegalArgumentException("Program has " + program_length + " bytes, at most " + MAX_PROGRAM_SIZE + " fit in RAM");
         this.SP = 0;
-        this.PC = 0x200;
+        this.PC = PROGRAM_START;
         this.display = display;
-        this.window = window;
         this.input = input;
 
-        // Set the reference of keypad (once) to input, instead of copying every tick.
-        this.keypad = this.input.get_keypad();
-
         // Start with known seed.
-        long seed = 123;
-        this.random = new Random(seed);
+        this.random = new Rng(seed);
 
         // Load program
         for (int i = 0; i < program_length; i++)
-            this.RAM[0x200 + i] = rom_program[i];
+            this.RAM[PROGRAM_START + i] = rom_program[i];
 
-        // Load font palette
+        // Load font palettes
         for (int i = 0; i < Font.font_palette.length; i++)
-            this.RAM[0x50 + i] = Font.font_palette[i];
+            this.RAM[FONT_ADDRESS + i] = Font.font_palette[i];
+        for (int i = 0; i < Font.big_font_palette.length; i++)
+            this.RAM[BIG_FONT_ADDRESS + i] = Font.big_font_palette[i];
     }
 
     /**
      * Single clock cycle.
      */
     public void tick() {
-        //logger.debug("Tick");
-
-        StringBuilder sb = new StringBuilder();
-        sb.append(Arrays.toString(this.registers)).append("\t\t");
-        sb.append("PC: ").append(String.format("0x%02X", this.PC)).append("\t");
-        sb.append("SP: ").append(String.format("0x%02X", this.SP)).append("\t");
-        sb.append("I: ").append(String.format("0x%02X", this.I));
-        //logger.debug(sb.toString());
+        // Hot path: must not allocate. For a readable listing of what executes, use the Disassembler.
 
-        // Update current keypad
-        // This is done automatically, this.keypad is referencing Input.keypad .
+        if (waiting_for_key && !resume_on_key())
+            return;
 
         // Fetch next instruction
-        short opcode = fetch_instruction();
+        int opcode = fetch_instruction();
+        trace(this.PC, opcode);
 
-        this.PC += 2;
+        this.PC = (this.PC + 2) & 0xFFFF;
+        if (Metrics.ENABLED)
+            metrics.count(Decoder.get_handler_id(opcode));
 
         // Execute instruction
-        Instruction instruction = execute_instruction(opcode);
-        //logger.debug(String.format("0x%04X", opcode) + ": " + instruction);
+        execute_instruction(opcode);
+    }
+
+    /**
+     * Executes a batch of instructions, one tick at a time. Stops early when Fx0A waits for a key.
+     */
+    @Override
+    public int execute(int budget) {
+        for (int i = 0; i < budget; i++) {
+            if (waiting_for_key && !resume_on_key())
+                return i;
+            tick();
+            if (idle_pass != 0)
+                i += skip_idle(budget - i - 1);
+        }
+        return budget;
+    }
+
+    /**
+     * True right after the jump of an idle loop: the CPU is at the start of the loop, and every pass of the loop until
+     * the end of the frame is the same. The engine must call skip_idle before executing anything else.
+     */
+    boolean is_idle() {
+        return idle_pass != 0;
+    }
+
+    /**
+     * Skips the whole passes of the idle loop that fit in the remaining budget. The state after them is the state now,
+     * so skipping is exact: the rest of the budget then runs the partial pass, as it would have.
+     * @param remaining Instructions left in the budget.
+     * @return Number of instructions skipped.
+     */
+    int skip_idle(int remaining) {
+        int skipped = remaining / idle_pass * idle_pass;
+        idle_pass = 0;
+        skipped_instructions += skipped;
+        if (Metrics.ENABLED)
+            metrics.skipped(skipped);
+        return skipped;
+    }
+
+    /**
+     * Enables skipping idle loops (on by default). The emulation is the same either way, only slower without.
+     */
+    public void set_idle_skipping(boolean idle_skipping) {
+        this.idle_skipping = idle_skipping;
+    }
+
+    /**
+     * Instructions of idle loops skipped instead of executed, since power-on.
+     */
+    public long get_skipped_instructions() {
+        return skipped_instructions;
+    }
+
+    /**
+     * Checks if the loop from target to the jump at the given address is idle, by simulating one pass on a copy of
+     * the registers: it is if the pass only stays in the loop, and ends with the registers it started with.
+     * @return Instructions in the pass, including the jump, or 0 if the loop isn't idle (yet).
+     */
+    private int idle_pass_length(int target, int jump) {
+        byte kind = loop_kinds[jump];
+        if (kind == LOOP_UNKNOWN) {
+            kind = is_pure_loop(target, jump) ? LOOP_PURE : LOOP_IMPURE;
+            loop_kinds[jump] = kind;
+        }
+        if (kind != LOOP_PURE)
+            return 0;
+
+        System.arraycopy(registers, 0, loop_registers, 0, registers.length);
+        int length = 1;
+        for (int pc = target; pc != jump; length++) {
+            if (pc > jump)
+                return 0;
+            int opcode = read_opcode(pc);
+            int x = get_x(opcode);
+            byte kk = (byte) opcode;
+            // Key out of range: leave it to the real instruction to fail.
+            if (opcode >> 12 == 0xE && (loop_registers[x] < 0 || loop_registers[x] >= keypad.length))
+                return 0;
+            boolean skip = switch (opcode >> 12) {
+                case 0x3 -> loop_registers[x] == kk;
+                case 0x4 -> loop_registers[x] != kk;
+                case 0x5 -> loop_registers[x] == loop_registers[get_y(opcode)];
+                case 0x9 -> loop_registers[x] != loop_registers[get_y(opcode)];
+                case 0x6 -> {
+                    loop_registers[x] = kk;
+                    yield false;
+                }
+                case 0xE -> keypad[loop_registers[x]] == ((opcode & 0xFF) == 0x9E);
+                default -> {
+                    // Fx07
+                    loop_registers[x] = delay_timer;
+                    yield false;
+                }
+            };
+            pc += skip ? 4 : 2;
+        }
+        return Arrays.equals(registers, loop_registers) ? length : 0;
+    }
+
+    /**
+     * True if every instruction from target to the jump only reads the delay timer and the keys, and writes registers.
+     */
+    private boolean is_pure_loop(int target, int jump) {
+        for (int pc = target; pc < jump; pc += 2) {
+            int opcode = read_opcode(pc);
+            boolean pure = switch (opcode >> 12) {
+                case 0x3, 0x4, 0x6 -> true;
+                case 0x5, 0x9 -> (opcode & 0xF) == 0;
+                case 0xE -> (opcode & 0xFF) == 0x9E || (opcode & 0xFF) == 0xA1;
+                case 0xF -> (opcode & 0xFF) == 0x07;
+                default -> false;
+            };
+            if (!pure)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends the Fx0A wait if a key is down.
+     * @return True if the CPU can run, false if it still waits.
+     */
+    boolean resume_on_key() {
+        for (int key = 0; key < keypad.length; key++) {
+            if (keypad[key]) {
+                registers[wait_register] = (byte) key;
+                waiting_for_key = false;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True while Fx0A waits for a key: instructions don't execute, timers and display go on.
+     */
+    public boolean is_waiting_for_key() {
+        return waiting_for_key;
+    }
+
+    /**
+     * True if the delay or sound timer still counts down.
+     */
+    public boolean are_timers_running() {
+        return delay_timer > 0 || sound_timer > 0;
+    }
+
+    /**
+     * True while the sound timer counts down: the buzzer sounds.
+     */
+    public boolean is_sound_on() {
+        return sound_timer > 0;
+    }
+
+    public Input get_input() {
+        return input;
+    }
 
-        // Post execution
+    /**
+     * Decrements the delay and sound timers. Must be called at 60 Hz, independent of the instruction rate.
+     */
+    public void tick_timers() {
         if (delay_timer > 0)
             delay_timer --;
         if (sound_timer > 0)
             sound_timer --;
     }
 
+    public void set_memory_listener(MemoryListener memory_listener) {
+        this.memory_listener = memory_listener;
+    }
+
+    /**
+     * Applies the key events queued by the input to the keypad. Called between frames, so keys never change in the middle of one.
+     * @return The keys that changed, bit N is key N.
+     */
+    public int latch_input() {
+        return input.poll(keypad);
+    }
+
+    public void set_key(int key, boolean pressed) {
+        keypad[key] = pressed;
+    }
+
+    public boolean is_key_pressed(int key) {
+        return keypad[key];
+    }
+
+    public void set_trace(TraceRecorder trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Counters of this CPU, null unless Metrics.ENABLED.
+     */
+    public Metrics get_metrics() {
+        return metrics;
+    }
+
+    public TraceRecorder get_trace() {
+        return trace;
+    }
+
+    public void set_profiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public Profiler get_profiler() {
+        return profiler;
+    }
+
+    /**
+     * True if tracing or profiling: engines must then run instruction by instruction, through trace().
+     */
+    public boolean is_observed() {
+        return trace != null || profiler != null;
+    }
+
+    /**
+     * Records the instruction about to execute at pc, if tracing or profiling. Engines that fetch by themselves must call it too.
+     */
+    void trace(int pc, int opcode) {
+        if (trace != null)
+            trace.record(pc, opcode, this.I, this.SP, this.registers);
+        if (profiler != null)
+            profiler.record(pc);
+    }
+
+    /**
+     * Writes the machine state (registers, timers, stack, RAM, display, random generator) at the buffer's position.
+     * See SaveState for the layout.
+     */
+    void save_state(ByteBuffer buffer) {
+        buffer.put(registers);
+        buffer.putShort((short) I);
+        buffer.putShort((short) PC);
+        buffer.put(SP);
+        buffer.put(delay_timer);
+        buffer.put(sound_timer);
+        for (short address : stack)
+            buffer.putShort(address);
+        buffer.put(RAM);
+        display.save_state(buffer);
+        buffer.putLong(random.get_state());
+        short keys = 0;
+        for (int key = 0; key < keypad.length; key++)
+            if (keypad[key])
+                keys |= (short) (1 << key);
+        buffer.putShort(keys);
+        buffer.put((byte) (waiting_for_key ? 0x80 | wait_register : 0));
+        buffer.put(flags);
+    }
+
+    /**
+     * Reads back the machine state written by save_state.
+     */
+    void load_state(ByteBuffer buffer) {
+        buffer.get(registers);
+        I = buffer.getShort() & 0xFFFF;
+        PC = buffer.getShort() & 0xFFFF;
+        SP = buffer.get();
+        delay_timer = buffer.get();
+        sound_timer = buffer.get();
+        idle_pass = 0;
+        for (int i = 0; i < stack.length; i++)
+            stack[i] = buffer.getShort();
+        buffer.get(RAM);
+        display.load_state(buffer);
+        random.set_state(buffer.getLong());
+        short keys = buffer.getShort();
+        for (int key = 0; key < keypad.length; key++)
+            keypad[key] = (keys & (1 << key)) != 0;
+        byte wait = buffer.get();
+        waiting_for_key = (wait & 0x80) != 0;
+        wait_register = wait & 0xF;
+        buffer.get(flags);
+
+        // The whole RAM changed, cached code is stale.
+        Arrays.fill(loop_kinds, LOOP_UNKNOWN);
+        if (memory_listener != null)
+            memory_listener.on_reset();
+    }
+
+    /**
+     * Writes a byte of RAM from outside the program, for example from a debugger.
+     */
+    public void poke(int address, byte value) {
+        this.RAM[address] = value;
+        memory_written(address, 1);
+    }
+
+    private void memory_written(int address, int length) {
+        // A write from I near the end of memory wraps around to address 0.
+        int wrapped = address + length - MEMORY_SIZE;
+        if (wrapped > 0) {
+            memory_written(0, wrapped);
+            length -= wrapped;
+        }
+        // The jumps closing a loop over the written bytes are at most one loop after them.
+        Arrays.fill(loop_kinds, address, Math.min(address + length + 2 * MAX_IDLE_LOOP, MEMORY_SIZE), LOOP_UNKNOWN);
+        if (memory_listener != null)
+            memory_listener.on_write(address, length);
+    }
+
+    /**
+     * Reads the opcode at the given address, as unsigned value. Used by execution engines that decode ahead of PC.
+     */
+    int read_opcode(int address) {
+        // An opcode at 0xFFFF wraps around: its second byte is at 0x0000.
+        return ((this.RAM[address] & 0xFF) << 8) | (this.RAM[(address + 1) & (MEMORY_SIZE - 1)] & 0xFF);
+    }
+
+    /**
+     * Skips the next instruction. F000 NNNN (XO-CHIP) is 4 bytes long, it's skipped as a whole.
+     */
+    private void skip() {
+        PC = (PC + (read_opcode(PC) == 0xF000 ? 4 : 2)) & 0xFFFF;
+    }
+
+    /**
+     * Number of return addresses on the stack.
+     */
+    int get_sp() {
+        return SP;
+    }
+
+    /**
+     * Return address pushed by the CALL at the given depth, 0 for the outermost call.
+     */
+    int get_return_address(int depth) {
+        return stack[depth] & 0xFFFF;
+    }
+
+    int get_pc() {
+        return this.PC;
+    }
+
+    int get_i() {
+        return this.I;
+    }
+
+    void set_pc(int pc) {
+        this.PC = pc & 0xFFFF;
+    }
+
+    void set_i(int i) {
+        this.I = i & 0xFFFF;
+    }
+
+    /**
+     * The registers themselves, for the code generated by the Recompiler.
+     */
+    byte[] get_registers() {
+        return registers;
+    }
+
     /**
      * Fetches the instruction OPCODE at the current PC.
-     * @return
+     * @return The opcode as unsigned value, 0x0000 to 0xFFFF.
      */
-    private short fetch_instruction() {
+    private int fetch_instruction() {
         byte msb = this.RAM[this.PC];
-        byte lsb = this.RAM[this.PC+1];
+        byte lsb = this.RAM[(this.PC + 1) & 0xFFFF];
 
-        short ret = (short)(((msb & 0xFF) << 8) | (lsb & 0xFF));
+        int ret = ((msb & 0xFF) << 8) | (lsb & 0xFF);
 
         //logger.debug("Fetching: " + String.format("0x%04X", ret));
         return ret;
     }
 
-    private Instruction execute_instruction(short opcode_short) {
+    /**
+     * Dispatches the opcode to its handler. The handler table is built once by the Decoder,
+     * so there is no decoding work here.
+     */
+    private void execute_instruction(int opcode) {
         //logger.debug("Executing");
-        byte x = get_nibble(opcode_short, 3);
-        Instruction.Operand vx = decodeOperand(x);
-
-        byte y = get_nibble(opcode_short, 2);
-        Instruction.Operand vy = decodeOperand(y);
-
-        byte kk = get_lsb(opcode_short);
-        short nnn = (short) (opcode_short & 0x0FFF);
-        byte nn = get_lsb(opcode_short);
-        short lsb = get_lsb(opcode_short);
-        byte first_nibble = get_nibble(opcode_short, 1);
-
-        // Java has no unsigned numbers. This is workaround.
-        String opcode_hex = String.format("%04X", opcode_short);
-        int opcode = Integer.parseInt(opcode_hex, 16);
-
-        // Decode instruction (for printing only)
-        Instruction instr;
-
-        if (opcode < 0x1000) {
-            if (opcode == 0x00E0) {
-                // 00E0 - CLS
-                // Clear the display.
-                instr = new Instruction(Instruction.Instructions.CLS);
-                this.display.cls();
-                this.window.repaint();
-            } else if (opcode == 0x00EE) {
-                // 00EE - RET
-                // Return from a subroutine.
-                // The interpreter sets the program counter to the address at the top of the stack, then subtracts 1 from the stack pointer.
-                instr = new Instruction(Instruction.Instructions.RET);
-                SP -= 1;
-                PC = stack[SP];
-            } else {
-                // 0nnn - SYS addr
-                // Jump to a machine code routine at nnn.
-                // This instruction is only used on the old computers on which Chip-8 was originally implemented. It is ignored by modern interpreters.
-
-                //throw new RuntimeException();
-                // Ignore!
-                instr = new Instruction(Instruction.Instructions.CALL,  nnn);
-            }
-        } else if (opcode < 0x2000) {
-            // 1nnn - JP addr
-            // Jump to location nnn.
-            // The interpreter sets the program counter to nnn.
-            instr = new Instruction(Instruction.Instructions.JP, nnn);
-            PC = nnn;
-        } else if (opcode < 0x3000) {
-            // 2nnn - CALL addr
-            // Call subroutine at nnn.
-            // The interpreter increments the stack pointer, then puts the current PC on the top of the stack. The PC is then set to nnn.
-            instr = new Instruction(Instruction.Instructions.CALL, nnn);
-            stack[SP] = PC;
-            SP += 1;
-            PC = nnn;
-        } else if (opcode < 0x4000) {
-            // 3xkk - SE Vx, byte
-            // Skip next instruction if Vx = kk.
-            // The interpreter compares register Vx to kk, and if they are equal, increments the program counter by 2.
-            instr = new Instruction(Instruction.Instructions.SE, vx, null, kk);
-            if (registers[x] == kk)
-                PC += 2;
-        } else if (opcode < 0x5000) {
-            // 4xkk - SNE Vx, byte
-            // Skip next instruction if Vx != kk.
-            // The interpreter compares register Vx to kk, and if they are not equal, increments the program counter by 2.
-            instr = new Instruction(Instruction.Instructions.SNE, vx, null, kk);
-            if (registers[x] != kk)
-                PC += 2;
-        } else if (opcode < 0x6000) {
-            // 5xy0 - SE Vx, Vy
-            // Skip next instruction if Vx = Vy.
-            // The interpreter compares register Vx to register Vy, and if they are equal, increments the program counter by 2.
-            instr = new Instruction(Instruction.Instructions.SE, vx, vy);
-            if (registers[x] == registers[y])
-                PC += 2;
-        } else if (opcode < 0x7000) {
-            // 6xkk - LD Vx, byte
-            // Set Vx = kk.
-            // The interpreter puts the value kk into register Vx.
-            instr = new Instruction(Instruction.Instructions.LD, vx, null, nn);
-            registers[x] = kk;
-        } else if (opcode < 0x8000) {
-            // 7xkk - ADD Vx, byte
-            // Set Vx = Vx + kk.
-            // Adds the value kk to the value of register Vx, then stores the result in Vx.
-            instr = new Instruction(Instruction.Instructions.ADD, vx, null, kk);
-            registers[x] += kk;
-        } else if (opcode < 0x9000) {
-            switch (first_nibble) {
-                case 0 -> {
-                    // 8xy0 - LD Vx, Vy
-                    // Set Vx = Vy.
-                    // Stores the value of register Vy in register Vx.
-                    instr = new Instruction(Instruction.Instructions.LD, vx, vy);
-                    registers[x] = registers[y];
-                }
-                case 1 -> {
-                    // 8xy1 - OR Vx, Vy
-                    // Set Vx = Vx OR Vy.
-                    // Performs a bitwise OR on the values of Vx and Vy, then stores the result in Vx. A bitwise OR compares the corrseponding bits from two values, and if either bit is 1, then the same bit in the result is also 1. Otherwise, it is 0.
-                    instr = new Instruction(Instruction.Instructions.OR, vx, vy);
-                    registers[x] |= registers[y];
-                }
-                case 2 -> {
-                    // 8xy2 - AND Vx, Vy
-                    // Set Vx = Vx AND Vy.
-                    // Performs a bitwise AND on the values of Vx and Vy, then stores the result in Vx. A bitwise AND compares the corrseponding bits from two values, and if both bits are 1, then the same bit in the result is also 1. Otherwise, it is 0.
-                    instr = new Instruction(Instruction.Instructions.AND, vx, vy);
-                    registers[x] &= registers[y];
-                }
-                case 3 -> {
-                    // 8xy3 - XOR Vx, Vy
-                    // Set Vx = Vx XOR Vy.
-                    // Performs a bitwise exclusive OR on the values of Vx and Vy, then stores the result in Vx. An exclusive OR compares the corrseponding bits from two values, and if the bits are not both the same, then the corresponding bit in the result is set to 1. Otherwise, it is 0.
-                    instr = new Instruction(Instruction.Instructions.XOR, vx, vy);
-                    registers[x] ^= registers[y];
-                }
-                case 4 -> {
-                    // 8xy4 - ADD Vx, Vy
-                    // Set Vx = Vx + Vy, set VF = carry.
-                    // The values of Vx and Vy are added together. If the result is greater than 8 bits (i.e., > 255,) VF is set to 1, otherwise 0. Only the lowest 8 bits of the result are kept, and stored in Vx.
-                    instr = new Instruction(Instruction.Instructions.ADD, vx, vy);
-                    int sum = registers[x] + registers[y];
-                    if (sum > 255)
-                        registers[0xF] = 1;
-                    else
-                        registers[0xF] = 0;
-                    registers[x] = (byte) (sum & 0xFF);
-                }
-                case 5 -> {
-                    // 8xy5 - SUB Vx, Vy
-                    // Set Vx = Vx - Vy, set VF = NOT borrow.
-                    // If Vx > Vy, then VF is set to 1, otherwise 0. Then Vy is subtracted from Vx, and the results stored in Vx.
-                    instr = new Instruction(Instruction.Instructions.SUB, vx, vy);
-                    if (registers[x] > registers[y])
-                        registers[0xF] = 1;
-                    else
-                        registers[0xF] = 0;
-                    registers[x] -= registers[y];
-                }
-                case 6 -> {
-                    // 8xy6 - SHR Vx {, Vy}
-                    // Set Vx = Vx SHR 1.
-                    // If the least-significant bit of Vx is 1, then VF is set to 1, otherwise 0. Then Vx is divided by 2.
-                    instr = new Instruction(Instruction.Instructions.SHR, vx, null);
-                    registers[0xF] = (byte) (registers[x] & 0x1);
-                    registers[x] >>= 1;
-                }
-                case 7 -> {
-                    // 8xy7 - SUBN Vx, Vy
-                    // Set Vx = Vy - Vx, set VF = NOT borrow.
-                    // If Vy > Vx, then VF is set to 1, otherwise 0. Then Vx is subtracted from Vy, and the results stored in Vx.
-                    instr = new Instruction(Instruction.Instructions.SUBN, vx, vy);
-                    if (registers[y] > registers[x])
-                        registers[0xF] = 1;
-                    else
-                        registers[0xF] = 0;
-                    registers[x] = (byte) (registers[y] - registers[x]);
-                }
-                case 0xE -> {
-                    // 8xyE - SHL Vx {, Vy}
-                    // Set Vx = Vx SHL 1.
-                    // If the most-significant bit of Vx is 1, then VF is set to 1, otherwise to 0. Then Vx is multiplied by 2.
-                    instr = new Instruction(Instruction.Instructions.SHL, vx, null);
-                    registers[0xF] = (byte) ((registers[x] & 0x80) >> 7);
-                    registers[x] <<= 1;
-                }
-                default ->
-                        throw new IllegalArgumentException("Impossible instruction, first octet not in range 0-7 and not equal to E. First octet: " + lsb);
-            }
-            ;
-        } else if (opcode < 0xA000) {
-            // 9xy0 - SNE Vx, Vy
-            // Skip next instruction if Vx != Vy.
-            // The values of Vx and Vy are compared, and if they are not equal, the program counter is increased by 2.
-            instr = new Instruction(Instruction.Instructions.SNE, vx, vy);
-            if (registers[x] != registers[y])
-                PC += 2;
-        } else if (opcode < 0xB000) {
-            // Annn - LD I, addr
-            // Set I = nnn.
-            // The value of register I is set to nnn.
-            instr = new Instruction(Instruction.Instructions.LD, Instruction.Operand.I, null, nnn);
-            I = nnn;
-        } else if (opcode < 0xC000) {
-            // Bnnn - JP V0, addr
-            // Jump to location nnn + V0.
-            // The program counter is set to nnn plus the value of V0.
-            instr = new Instruction(Instruction.Instructions.JP, Instruction.Operand.V0, null, nnn);
-            PC = (short) (registers[0] + nnn);
-        } else if (opcode < 0xD000) {
-            // Cxkk - RND Vx, byte
-            // Set Vx = random byte AND kk.
-            // The interpreter generates a random number from 0 to 255, which is then ANDed with the value kk.
-            // The results are stored in Vx. See instruction 8xy2 for more information on AND.
-            instr = new Instruction(Instruction.Instructions.RND, vx, null, kk);
-            byte rnd = (byte) (random.nextInt() % 0xF);
-            registers[x] = (byte) (rnd & kk);
-        } else if (opcode < 0xE000) {
-            // Dxyn - DRW Vx, Vy, nibble
-            // Display n-byte sprite starting at memory location I at (Vx, Vy), set VF = collision.
-            /*
-            The interpreter reads n bytes from memory, starting at the address stored in I.
-            These bytes are then displayed as sprites on screen at coordinates (Vx, Vy).
-            Sprites are XORed onto the existing screen. If this causes any pixels to be erased,
-            VF is set to 1, otherwise it is set to 0. If the sprite is positioned so part of it is outside
-            the coordinates of the display, it wraps around to the opposite side of the screen.
-            See instruction 8xy3 for more information on XOR, and section 2.4, Display,
-            for more information on the Chip-8 screen and sprites.
-             */
-            instr = new Instruction(Instruction.Instructions.DRW, vx, vy, first_nibble);
+        Decoder.get(opcode).execute(this, opcode);
+    }
+
+    /*
+     * Instruction handlers. Called by the Decoder table, opcode is unsigned (0x0000 to 0xFFFF).
+     */
+
+    void op_cls(int opcode) {
+        // 00E0 - CLS
+        // Clear the display.
+        this.display.cls();
+    }
+
+    void op_ret(int opcode) {
+        // 00EE - RET
+        // Return from a subroutine.
+        // The interpreter sets the program counter to the address at the top of the stack, then subtracts 1 from the stack pointer.
+        SP -= 1;
+        PC = stack[SP] & 0xFFFF;
+    }
+
+    void op_scd(int opcode) {
+        // 00Cn - SCD nibble (SUPER-CHIP)
+        // Scroll the display down by n rows.
+        display.scroll_down(get_n(opcode));
+    }
+
+    void op_scu(int opcode) {
+        // 00Dn - SCU nibble (XO-CHIP)
+        // Scroll the selected planes up by n rows.
+        display.scroll_up(get_n(opcode));
+    }
+
+    void op_scr(int opcode) {
+        // 00FB - SCR (SUPER-CHIP)
+        // Scroll the display right by 4 pixels.
+        display.scroll_right(4);
+    }
+
+    void op_scl(int opcode) {
+        // 00FC - SCL (SUPER-CHIP)
+        // Scroll the display left by 4 pixels.
+        display.scroll_left(4);
+    }
+
+    void op_exit(int opcode) {
+        // 00FD - EXIT (SUPER-CHIP)
+        // Exit the interpreter. The program stops here: the instruction jumps to itself forever.
+        PC = (PC - 2) & 0xFFFF;
+    }
+
+    void op_low(int opcode) {
+        // 00FE - LOW (SUPER-CHIP)
+        // Disable high resolution mode: 64x32.
+        display.set_hires(false);
+    }
+
+    void op_high(int opcode) {
+        // 00FF - HIGH (SUPER-CHIP)
+        // Enable high resolution mode: 128x64.
+        display.set_hires(true);
+    }
+
+    void op_sys(int opcode) {
+        // 0nnn - SYS addr
+        // Jump to a machine code routine at nnn.
+        // This instruction is only used on the old computers on which Chip-8 was originally implemented. It is ignored by modern interpreters.
+
+        //throw new RuntimeException();
+        // Ignore!
+    }
+
+    void op_jp(int opcode) {
+        // 1nnn - JP addr
+        // Jump to location nnn.
+        // The interpreter sets the program counter to nnn.
+        int target = get_nnn(opcode);
+        int jump = PC - 2;
+        if (idle_skipping && target <= jump && jump - target < 2 * MAX_IDLE_LOOP && !is_observed())
+            idle_pass = idle_pass_length(target, jump);
+        PC = target;
+    }
+
+    void op_call(int opcode) {
+        // 2nnn - CALL addr
+        // Call subroutine at nnn.
+        // The interpreter increments the stack pointer, then puts the current PC on the top of the stack. The PC is then set to nnn.
+        stack[SP] = (short) PC;
+        SP += 1;
+        PC = get_nnn(opcode);
+    }
+
+    void op_se_byte(int opcode) {
+        // 3xkk - SE Vx, byte
+        // Skip next instruction if Vx = kk.
+        // The interpreter compares register Vx to kk, and if they are equal, increments the program counter by 2.
+        if (registers[get_x(opcode)] == get_kk(opcode))
+            skip();
+    }
+
+    void op_sne_byte(int opcode) {
+        // 4xkk - SNE Vx, byte
+        // Skip next instruction if Vx != kk.
+        // The interpreter compares register Vx to kk, and if they are not equal, increments the program counter by 2.
+        if (registers[get_x(opcode)] != get_kk(opcode))
+            skip();
+    }
+
+    void op_se_reg(int opcode) {
+        // 5xy0 - SE Vx, Vy
+        // Skip next instruction if Vx = Vy.
+        // The interpreter compares register Vx to register Vy, and if they are equal, increments the program counter by 2.
+        if (registers[get_x(opcode)] == registers[get_y(opcode)])
+            skip();
+    }
+
+    void op_ld_range_i(int opcode) {
+        // 5xy2 - LD [I], Vx-Vy (XO-CHIP)
+        // Store registers Vx through Vy in memory starting at location I, in reverse order if x > y. I is not changed.
+        int x = get_x(opcode);
+        int y = get_y(opcode);
+        int step = x <= y ? 1 : -1;
+        int count = Math.abs(y - x) + 1;
+        for (int i = 0; i < count; i++)
+            this.RAM[(this.I + i) & 0xFFFF] = registers[x + i * step];
+        memory_written(this.I, count);
+    }
+
+    void op_ld_range_vx(int opcode) {
+        // 5xy3 - LD Vx-Vy, [I] (XO-CHIP)
+        // Read registers Vx through Vy from memory starting at location I, in reverse order if x > y. I is not changed.
+        int x = get_x(opcode);
+        int y = get_y(opcode);
+        int step = x <= y ? 1 : -1;
+        int count = Math.abs(y - x) + 1;
+        for (int i = 0; i < count; i++)
+            registers[x + i * step] = this.RAM[(this.I + i) & 0xFFFF];
+    }
+
+    void op_ld_byte(int opcode) {
+        // 6xkk - LD Vx, byte
+        // Set Vx = kk.
+        // The interpreter puts the value kk into register Vx.
+        registers[get_x(opcode)] = get_kk(opcode);
+    }
+
+    void op_add_byte(int opcode) {
+        // 7xkk - ADD Vx, byte
+        // Set Vx = Vx + kk.
+        // Adds the value kk to the value of register Vx, then stores the result in Vx.
+        registers[get_x(opcode)] += get_kk(opcode);
+    }
+
+    void op_ld_reg(int opcode) {
+        // 8xy0 - LD Vx, Vy
+        // Set Vx = Vy.
+        // Stores the value of register Vy in register Vx.
+        registers[get_x(opcode)] = registers[get_y(opcode)];
+    }
+
+    void op_or(int opcode) {
+        // 8xy1 - OR Vx, Vy
+        // Set Vx = Vx OR Vy.
+        // Performs a bitwise OR on the values of Vx and Vy, then stores the result in Vx. A bitwise OR compares the corrseponding bits from two values, and if either bit is 1, then the same bit in the result is also 1. Otherwise, it is 0.
+        registers[get_x(opcode)] |= registers[get_y(opcode)];
+    }
+
+    void op_and(int opcode) {
+        // 8xy2 - AND Vx, Vy
+        // Set Vx = Vx AND Vy.
+        // Performs a bitwise AND on the values of Vx and Vy, then stores the result in Vx. A bitwise AND compares the corrseponding bits from two values, and if both bits are 1, then the same bit in the result is also 1. Otherwise, it is 0.
+        registers[get_x(opcode)] &= registers[get_y(opcode)];
+    }
+
+    void op_xor(int opcode) {
+        // 8xy3 - XOR Vx, Vy
+        // Set Vx = Vx XOR Vy.
+        // Performs a bitwise exclusive OR on the values of Vx and Vy, then stores the result in Vx. An exclusive OR compares the corrseponding bits from two values, and if the bits are not both the same, then the corresponding bit in the result is set to 1. Otherwise, it is 0.
+        registers[get_x(opcode)] ^= registers[get_y(opcode)];
+    }
+
+    void op_add_reg(int opcode) {
+        // 8xy4 - ADD Vx, Vy
+        // Set Vx = Vx + Vy, set VF = carry.
+        // The values of Vx and Vy are added together. If the result is greater than 8 bits (i.e., > 255,) VF is set to 1, otherwise 0. Only the lowest 8 bits of the result are kept, and stored in Vx.
+        int x = get_x(opcode);
+        int sum = registers[x] + registers[get_y(opcode)];
+        if (sum > 255)
+            registers[0xF] = 1;
+        else
             registers[0xF] = 0;
-            // Transform signed byte to unsigned int
-            int registerX = registers[x] & 0xFF;
-            int registerY = registers[y] & 0xFF;
-
-            byte xPos = (byte) (registerX % Display.COLS);
-            byte yPos = (byte) (registerY % Display.ROWS);
-            byte height = first_nibble;
-
-            // Iterate over the sprite pixels (on, off per pixel)
-            for (int row = 0; row < height; row++) {
-                byte spriteByte = this.RAM[this.I + row];
-                //String.format("0x%02X", this.RAM[this.I + row]) //TODO: Remove
-                for (int col = 0; col < 8; col++) {
-                    // Get bit of current row, bit index is 'col'
-                    boolean spritePixel = (spriteByte & (0x80 >> col)) != 0;
-                    boolean pixel = display.getPixel(yPos + row, xPos + col);
-
-                    if (spritePixel) {
-                        if (pixel)
-                            registers[0xF] = 1;
-                        boolean pixel_xor = pixel ^  true; // TODO: Something here
-                        display.setPixel(yPos + row, xPos + col, pixel_xor);
-                    }
-                }
-            }
-            this.window.repaint();
-        } else if (opcode < 0xF000) {
-            byte key = registers[x];
-            switch (lsb & 0xFF) {
-                case 0x9E -> {
-                    // Ex9E - SKP Vx
-                    // Skip next instruction if key with the value of Vx is pressed.
-                    // Checks the keyboard, and if the key corresponding to the value of Vx is currently in the down position, PC is increased by 2.
-                    instr = new Instruction(Instruction.Instructions.SKP, vx, null);
-                    if (keypad[key])
-                        PC += 2;
-                }
-                case 0xA1 -> {
-                    // ExA1 - SKNP Vx
-                    // Skip next instruction if key with the value of Vx is not pressed.
-                    // Checks the keyboard, and if the key corresponding to the value of Vx is currently in the up position, PC is increased by 2.
-                    instr = new Instruction(Instruction.Instructions.SKNP, vx, null);
-                    if (!keypad[key])
-                        PC += 2;
-                }
-                default ->
-                        throw new IllegalArgumentException("Impossible instruction, first octet isn't 0x9E or 0xA1, first octet: " + lsb);
-            }
-            ;
-        } else {
-            switch (lsb) {
-                case 0x07 -> {
-                    // Fx07 - LD Vx, DT
-                    // Set Vx = delay timer value.
-                    // The value of DT is placed into Vx.
-                    instr = new Instruction(Instruction.Instructions.LD, vx, Instruction.Operand.DT);
-                    registers[x] = delay_timer;
-                }
-                case 0x0A -> {
-                    // Fx0A - LD Vx, K
-                    // Wait for a key press, store the value of the key in Vx.
-                    // All execution stops until a key is pressed, then the value of that key is stored in Vx.
-                    instr = new Instruction(Instruction.Instructions.LD, vx, Instruction.Operand.K);
-                    logger.info("Waiting for key press");
-                    boolean keyPressed = false;
-                    while (! keyPressed) {
-                        for (int i = 0; i < 0xF; i++) {
-                            if (keypad[i]) {
-                                registers[x] = (byte) i;
-                                keyPressed = true;
-                                break;
-                            }
-                        }
-                    }
-                }
-                case 0x15 -> {
-                    // Fx15 - LD DT, Vx
-                    // Set delay timer = Vx.
-                    // DT is set equal to the value of Vx.
-                    instr = new Instruction(Instruction.Instructions.LD, Instruction.Operand.DT, vx);
-                    delay_timer = registers[x];
-                }
-                case 0x18 -> {
-                    // Fx18 - LD ST, Vx
-                    // Set sound timer = Vx.
-                    // ST is set equal to the value of Vx.
-                    instr = new Instruction(Instruction.Instructions.LD, Instruction.Operand.ST, vx);
-                    sound_timer = registers[x];
-                }
-                case 0x1E -> {
-                    // Fx1E - ADD I, Vx
-                    // Set I = I + Vx.
-                    // The values of I and Vx are added, and the results are stored in I.
-                    instr = new Instruction(Instruction.Instructions.ADD, Instruction.Operand.I, vx);
-                    this.I += registers[x];
-                }
-                case 0x29 -> {
-                    // Fx29 - LD F, Vx
-                    // Set I = location of sprite for digit Vx.
-                    // The value of I is set to the location for the hexadecimal sprite corresponding to the value of Vx. See section 2.4, Display, for more information on the Chip-8 hexadecimal font.
-                    instr = new Instruction(Instruction.Instructions.LD, Instruction.Operand.F, vx);
-                    this.I = (short) (0x50 + ( 5 * registers[x] ));
-                }
-                case 0x33 -> {
-                    // Fx33 - LD B, Vx
-                    // Store BCD representation of Vx in memory locations I, I+1, and I+2.
-                    // The interpreter takes the decimal value of Vx, and places the hundreds digit in memory at location in I, the tens digit at location I+1, and the ones digit at location I+2.
-                    instr = new Instruction(Instruction.Instructions.LD, Instruction.Operand.B, vx);
-                    byte b_value = registers[x];
+        registers[x] = (byte) (sum & 0xFF);
+    }
 
-                    // I do this conversion because if the value is -119 for example, the number should be 137 in unsigned, and so it must have digits 1,3,7 placed into RAM
-                    int value = b_value & 0xFF;
+    void op_sub(int opcode) {
+        // 8xy5 - SUB Vx, Vy
+        // Set Vx = Vx - Vy, set VF = NOT borrow.
+        // If Vx > Vy, then VF is set to 1, otherwise 0. Then Vy is subtracted from Vx, and the results stored in Vx.
+        int x = get_x(opcode);
+        int y = get_y(opcode);
+        if (registers[x] > registers[y])
+            registers[0xF] = 1;
+        else
+            registers[0xF] = 0;
+        registers[x] -= registers[y];
+    }
 
-                    logger.debug("BCD Instruction, value = " + value);
+    void op_shr(int opcode) {
+        // 8xy6 - SHR Vx {, Vy}
+        // Set Vx = Vx SHR 1.
+        // If the least-significant bit of Vx is 1, then VF is set to 1, otherwise 0. Then Vx is divided by 2.
+        int x = get_x(opcode);
+        registers[0xF] = (byte) (registers[x] & 0x1);
+        registers[x] >>= 1;
+    }
 
-                    this.RAM[this.I + 2] = (byte) (value % 10);
-                    logger.debug("RAM[I+2] = " + this.RAM[this.I + 2]);
+    void op_subn(int opcode) {
+        // 8xy7 - SUBN Vx, Vy
+        // Set Vx = Vy - Vx, set VF = NOT borrow.
+        // If Vy > Vx, then VF is set to 1, otherwise 0. Then Vx is subtracted from Vy, and the results stored in Vx.
+        int x = get_x(opcode);
+        int y = get_y(opcode);
+        if (registers[y] > registers[x])
+            registers[0xF] = 1;
+        else
+            registers[0xF] = 0;
+        registers[x] = (byte) (registers[y] - registers[x]);
+    }
 
-                    value /= 10;
-                    this.RAM[this.I + 1] = (byte) (value % 10);
-                    logger.debug("RAM[I+1] = " + this.RAM[this.I + 1]);
+    void op_shl(int opcode) {
+        // 8xyE - SHL Vx {, Vy}
+        // Set Vx = Vx SHL 1.
+        // If the most-significant bit of Vx is 1, then VF is set to 1, otherwise to 0. Then Vx is multiplied by 2.
+        int x = get_x(opcode);
+        registers[0xF] = (byte) ((registers[x] & 0x80) >> 7);
+        registers[x] <<= 1;
+    }
 
-                    value /= 10;
-                    this.RAM[this.I] = (byte) (value % 10);
-                    logger.debug("RAM[I] = " + this.RAM[this.I]);
-                }
-                case 0x55 -> {
-                    // Fx55 - LD [I], Vx
-                    // Store registers V0 through Vx in memory starting at location I.
-                    // The interpreter copies the values of registers V0 through Vx into memory, starting at the address in I.
-                    instr = new Instruction(Instruction.Instructions.LD, Instruction.Operand.I_ARRAY, vx);
-                    for (int i = 0; i <= x; i++)
-                        this.RAM[this.I + i] = registers[i];
-                }
-                case 0x65 -> {
-                    // Fx65 - LD Vx, [I]
-                    // Read registers V0 through Vx from memory starting at location I.
-                    // The interpreter reads values from memory starting at location I into registers V0 through Vx.
-                    instr = new Instruction(Instruction.Instructions.LD, vx, Instruction.Operand.I);
-                    for (int i = 0; i <= x; i++)
-                        registers[i] = this.RAM[this.I + i];
-                }
-                default -> {
-                    throw new IllegalArgumentException("Can't decode opcode: " + opcode_hex);
-                }
-            };
-        }
-        return instr;
+    void op_sne_reg(int opcode) {
+        // 9xy0 - SNE Vx, Vy
+        // Skip next instruction if Vx != Vy.
+        // The values of Vx and Vy are compared, and if they are not equal, the program counter is increased by 2.
+        if (registers[get_x(opcode)] != registers[get_y(opcode)])
+            skip();
     }
 
-    private Instruction.Operand decodeOperand(byte value) {
-        String op_str = "V" + String.format("%01X", value);
-        return Instruction.Operand.valueOf(op_str);
+    void op_ld_i_long(int opcode) {
+        // F000 NNNN - LD I, long addr (XO-CHIP)
+        // Set I = NNNN, the 16-bit word following the instruction, which is skipped.
+        I = read_opcode(PC);
+        PC = (PC + 2) & 0xFFFF;
     }
 
-    private byte get_lsb(short input) {
-        return (byte) ((input << 8) >> 8);
+    void op_plane(int opcode) {
+        // Fn01 - PLANE n (XO-CHIP)
+        // Select the bitplanes that CLS, DRW and the scrolls work on: bit 0 is plane 1, bit 1 is plane 2.
+        display.set_plane_mask(get_x(opcode));
     }
 
-    /**
-     * Returns nibble given the nibble number. Nibble number is ordered from right to left, like so: 4321
-     * @param input
-     * @param nibble_num
-     * @return An octet. The octet value can be from 0 to 15, no more.
-     */
-    private byte get_nibble(short input, int nibble_num) {
-        return switch (nibble_num) {
-            case 1 -> (byte) (input & 0x000F);
-            case 2 -> (byte) ((input & 0x00F0) >> 4);
-            case 3 -> (byte) ((input & 0x0F00) >> 8);
-            case 4 -> (byte) ((input & 0xF000) >> 12);
-            default -> throw new IllegalArgumentException("Octet can be 1-4. Got: " + nibble_num);
-        };
+    void op_ld_i(int opcode) {
+        // Annn - LD I, addr
+        // Set I = nnn.
+        // The value of register I is set to nnn.
+        I = get_nnn(opcode);
+    }
+
+    void op_jp_v0(int opcode) {
+        // Bnnn - JP V0, addr
+        // Jump to location nnn + V0.
+        // The program counter is set to nnn plus the value of V0.
+        PC = (registers[0] & 0xFF) + get_nnn(opcode);
+    }
+
+    void op_rnd(int opcode) {
+        // Cxkk - RND Vx, byte
+        // Set Vx = random byte AND kk.
+        // The interpreter generates a random number from 0 to 255, which is then ANDed with the value kk.
+        // The results are stored in Vx. See instruction 8xy2 for more information on AND.
+        byte rnd = (byte) (random.next_int() % 0xF);
+        registers[get_x(opcode)] = (byte) (rnd & get_kk(opcode));
+    }
+
+    void op_drw(int opcode) {
+        // Dxyn - DRW Vx, Vy, nibble
+        // Display n-byte sprite starting at memory location I at (Vx, Vy), set VF = collision.
+        /*
+        The interpreter reads n bytes from memory, starting at the address stored in I.
+        These bytes are then displayed as sprites on screen at coordinates (Vx, Vy).
+        Sprites are XORed onto the existing screen. If this causes any pixels to be erased,
+        VF is set to 1, otherwise it is set to 0. If the sprite is positioned so part of it is outside
+        the coordinates of the display, it wraps around to the opposite side of the screen.
+        See instruction 8xy3 for more information on XOR, and section 2.4, Display,
+        for more information on the Chip-8 screen and sprites.
+         */
+        registers[0xF] = 0;
+        // Transform signed byte to unsigned int
+        int registerX = registers[get_x(opcode)] & 0xFF;
+        int registerY = registers[get_y(opcode)] & 0xFF;
+
+        // Both modes have power of two sizes.
+        int xPos = registerX & (display.get_cols() - 1);
+        int yPos = registerY & (display.get_rows() - 1);
+        int height = get_n(opcode);
+
+        // Dxy0 (SUPER-CHIP): a 16x16 sprite, two bytes per row.
+        boolean wide = height == 0;
+        if (wide)
+            height = 16;
+
+        // Each sprite row is a single XOR on the packed display row, wrapping around the edges.
+        int collided = display.draw_sprite(this.RAM, this.I, height, wide, xPos, yPos);
+        if (Metrics.ENABLED)
+            metrics.drawn(collided != 0);
+        // In high resolution VF counts the rows that collided (SUPER-CHIP), else it's 1 for any collision.
+        if (collided != 0)
+            registers[0xF] = display.is_hires() ? (byte) collided : 1;
+    }
+
+    void op_skp(int opcode) {
+        // Ex9E - SKP Vx
+        // Skip next instruction if key with the value of Vx is pressed.
+        // Checks the keyboard, and if the key corresponding to the value of Vx is currently in the down position, PC is increased by 2.
+        if (keypad[registers[get_x(opcode)]])
+            skip();
+    }
+
+    void op_sknp(int opcode) {
+        // ExA1 - SKNP Vx
+        // Skip next instruction if key with the value of Vx is not pressed.
+        // Checks the keyboard, and if the key corresponding to the value of Vx is currently in the up position, PC is increased by 2.
+        if (!keypad[registers[get_x(opcode)]])
+            skip();
+    }
+
+    void op_ld_vx_dt(int opcode) {
+        // Fx07 - LD Vx, DT
+        // Set Vx = delay timer value.
+        // The value of DT is placed into Vx.
+        registers[get_x(opcode)] = delay_timer;
+    }
+
+    void op_ld_vx_k(int opcode) {
+        // Fx0A - LD Vx, K
+        // Wait for a key press, store the value of the key in Vx.
+        // All execution stops until a key is pressed, then the value of that key is stored in Vx.
+        // Keys only change between frames, so don't spin here: enter the wait state, engines stop executing until a key is down.
+        wait_register = get_x(opcode);
+        waiting_for_key = true;
+        resume_on_key();
+    }
+
+    void op_ld_dt_vx(int opcode) {
+        // Fx15 - LD DT, Vx
+        // Set delay timer = Vx.
+        // DT is set equal to the value of Vx.
+        delay_timer = registers[get_x(opcode)];
+    }
+
+    void op_ld_st_vx(int opcode) {
+        // Fx18 - LD ST, Vx
+        // Set sound timer = Vx.
+        // ST is set equal to the value of Vx.
+        sound_timer = registers[get_x(opcode)];
+    }
+
+    void op_add_i_vx(int opcode) {
+        // Fx1E - ADD I, Vx
+        // Set I = I + Vx.
+        // The values of I and Vx are added, and the results are stored in I.
+        this.I = (this.I + registers[get_x(opcode)]) & 0xFFFF;
+    }
+
+    void op_ld_f_vx(int opcode) {
+        // Fx29 - LD F, Vx
+        // Set I = location of sprite for digit Vx.
+        // The value of I is set to the location for the hexadecimal sprite corresponding to the value of Vx. See section 2.4, Display, for more information on the Chip-8 hexadecimal font.
+        this.I = (FONT_ADDRESS + ( 5 * registers[get_x(opcode)] )) & 0xFFFF;
+    }
+
+    void op_ld_hf_vx(int opcode) {
+        // Fx30 - LD HF, Vx (SUPER-CHIP)
+        // Set I = location of the 8x10 sprite for digit Vx (0-9, A-F on XO-CHIP).
+        this.I = BIG_FONT_ADDRESS + 10 * (registers[get_x(opcode)] & 0xF);
+    }
+
+    void op_ld_b_vx(int opcode) {
+        // Fx33 - LD B, Vx
+        // Store BCD representation of Vx in memory locations I, I+1, and I+2.
+        // The interpreter takes the decimal value of Vx, and places the hundreds digit in memory at location in I, the tens digit at location I+1, and the ones digit at location I+2.
+        byte b_value = registers[get_x(opcode)];
+
+        // I do this conversion because if the value is -119 for example, the number should be 137 in unsigned, and so it must have digits 1,3,7 placed into RAM
+        int value = b_value & 0xFF;
+
+        this.RAM[(this.I + 2) & 0xFFFF] = (byte) (value % 10);
+
+        value /= 10;
+        this.RAM[(this.I + 1) & 0xFFFF] = (byte) (value % 10);
+
+        value /= 10;
+        this.RAM[this.I] = (byte) (value % 10);
+
+        memory_written(this.I, 3);
+    }
+
+    void op_ld_i_array_vx(int opcode) {
+        // Fx55 - LD [I], Vx
+        // Store registers V0 through Vx in memory starting at location I.
+        // The interpreter copies the values of registers V0 through Vx into memory, starting at the address in I.
+        int x = get_x(opcode);
+        for (int i = 0; i <= x; i++)
+            this.RAM[(this.I + i) & 0xFFFF] = registers[i];
+        memory_written(this.I, x + 1);
+    }
+
+    void op_ld_r_vx(int opcode) {
+        // Fx75 - LD R, Vx (SUPER-CHIP)
+        // Store registers V0 through Vx in the RPL user flags. They survive the program, not the emulator.
+        System.arraycopy(registers, 0, flags, 0, get_x(opcode) + 1);
+    }
+
+    void op_ld_vx_r(int opcode) {
+        // Fx85 - LD Vx, R (SUPER-CHIP)
+        // Read registers V0 through Vx from the RPL user flags.
+        System.arraycopy(flags, 0, registers, 0, get_x(opcode) + 1);
+    }
+
+    void op_ld_vx_i_array(int opcode) {
+        // Fx65 - LD Vx, [I]
+        // Read registers V0 through Vx from memory starting at location I.
+        // The interpreter reads values from memory starting at location I into registers V0 through Vx.
+        int x = get_x(opcode);
+        for (int i = 0; i <= x; i++)
+            registers[i] = this.RAM[(this.I + i) & 0xFFFF];
+    }
+
+    private static int get_x(int opcode) {
+        return (opcode & 0x0F00) >> 8;
+    }
+
+    private static int get_y(int opcode) {
+        return (opcode & 0x00F0) >> 4;
+    }
+
+    private static int get_n(int opcode) {
+        return opcode & 0x000F;
+    }
+
+    private static byte get_kk(int opcode) {
+        return (byte) opcode;
+    }
+
+    private static short get_nnn(int opcode) {
+        return (short) (opcode & 0x0FFF);
     }
 }
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * Interpreter with a pre-decoded instruction cache.
+ * Each 2-byte word of RAM is decoded once, on first execution: its handler is cached by address,
+ * next to an entry (handler id << 16 | opcode). The opcode's own bit fields hold x, y, n, kk and nnn in place,
+ * so executing an instruction is two loads indexed by PC and a call of the cached handler, with no fetch and no decode.
+ * The call still goes through the Handler interface: for inlined handlers, see the Recompiler.
+ *
+ * RAM writes (Fx33, Fx55, CPU.poke) clear the entries they overlap, so self-modifying ROMs stay correct.
+ * A lighter alternative to the Recompiler.
+ */
+public final class DecodeCache implements ExecutionEngine, MemoryListener {
+    private static final int MEMORY_SIZE = CPU.MEMORY_SIZE;
+
+    private final CPU cpu;
+
+    // Indexed by address. A null handler means not decoded.
+    private final Decoder.Handler[] handlers = new Decoder.Handler[MEMORY_SIZE];
+    private final int[] entries = new int[MEMORY_SIZE];
+
+    /**
+     * Statistics
+     */
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    // Final class: it registers itself as the cpu's listener while constructed, no subclass can be half built.
+    public DecodeCache(CPU cpu) {
+        this.cpu = cpu;
+        cpu.set_memory_listener(this);
+    }
+
+    @Override
+    public int execute(int budget) {
+        for (int i = 0; i < budget; i++) {
+            if (cpu.is_waiting_for_key() && !cpu.resume_on_key())
+                return i;
+
+            int pc = cpu.get_pc();
+            if (pc == MEMORY_SIZE - 1) {
+                // The opcode wraps around the end of memory, the interpreter reads it.
+                cpu.tick();
+                continue;
+            }
+
+            Decoder.Handler handler = handlers[pc];
+            if (handler == null) {
+                int opcode = cpu.read_opcode(pc);
+                handler = Decoder.get(opcode);
+                handlers[pc] = handler;
+                entries[pc] = (Decoder.get_handler_id(opcode) << 16) | opcode;
+                misses++;
+            } else {
+                hits++;
+            }
+
+            int entry = entries[pc];
+            cpu.trace(pc, entry & 0xFFFF);
+            cpu.set_pc(pc + 2);
+            if (Metrics.ENABLED)
+                cpu.get_metrics().count(entry >>> 16);
+            handler.execute(cpu, entry & 0xFFFF);
+            if (cpu.is_idle())
+                i += cpu.skip_idle(budget - i - 1);
+        }
+        return budget;
+    }
+
+    /**
+     * Clears the entries overlapping the written addresses.
+     * The instruction starting one byte before the write is affected too.
+     */
+    @Override
+    public void on_write(int address, int length) {
+        int from = Math.max(address - 1, 0);
+        int to = Math.min(address + length, MEMORY_SIZE);
+        for (int i = from; i < to; i++) {
+            if (handlers[i] != null) {
+                handlers[i] = null;
+                invalidations++;
+            }
+        }
+    }
+
+    @Override
+    public void on_reset() {
+        Arrays.fill(handlers, null);
+    }
+
+    public long get_hits() {
+        return hits;
+    }
+
+    public long get_misses() {
+        return misses;
+    }
+
+    public long get_invalidations() {
+        return invalidations;
+    }
+}
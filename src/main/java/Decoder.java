@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes every possible 16-bit opcode once, at class load, into a table of handlers.
+ * Executing an instruction is then a single indexed lookup: Decoder.get(opcode).execute(cpu, opcode).
+ */
+public class Decoder {
+    /**
+     * Executes a single decoded instruction on the CPU.
+     * The opcode is passed as unsigned int (0x0000 to 0xFFFF), handlers extract x, y, n, kk, nnn from it.
+     */
+    public interface Handler {
+        void execute(CPU cpu, int opcode);
+    }
+
+    private static final Handler INVALID = (cpu, opcode) -> {
+        throw new IllegalArgumentException("Can't decode opcode: " + String.format("%04X", opcode));
+    };
+
+    // Indexed by opcode, 65,536 entries.
+    private static final Handler[] table = new Handler[0x10000];
+    // Each distinct handler has a small id, for engines that store decoded instructions as primitives.
+    private static final byte[] handler_ids = new byte[0x10000];
+    private static final Handler[] handlers;
+
+    static {
+        // Method references without captures are a single instance each, so handlers can be told apart by identity.
+        List<Handler> distinct = new ArrayList<>();
+        Map<Handler, Integer> ids = new IdentityHashMap<>();
+        for (int opcode = 0; opcode < table.length; opcode++) {
+            Handler handler = decode(opcode);
+            table[opcode] = handler;
+            handler_ids[opcode] = (byte) (int) ids.computeIfAbsent(handler, h -> {
+                distinct.add(h);
+                return distinct.size() - 1;
+            });
+        }
+        handlers = distinct.toArray(new Handler[0]);
+    }
+
+    private Decoder() {
+    }
+
+    public static Handler get(int opcode) {
+        return table[opcode];
+    }
+
+    /**
+     * Returns the id of the opcode's handler, 0 to get_handler_count() - 1.
+     */
+    public static int get_handler_id(int opcode) {
+        return handler_ids[opcode];
+    }
+
+    public static int get_handler_count() {
+        return handlers.length;
+    }
+
+    /**
+     * Finds the handler of a single opcode. Only called while building the table.
+     */
+    private static Handler decode(int opcode) {
+        int n = opcode & 0x000F;
+        int kk = opcode & 0x00FF;
+
+        switch ((opcode & 0xF000) >> 12) {
+            case 0x0:
+                if ((opcode & 0xFFF0) == 0x00C0)
+                    return CPU::op_scd;
+                if ((opcode & 0xFFF0) == 0x00D0)
+                    return CPU::op_scu;
+                return switch (opcode) {
+                    case 0x00E0 -> CPU::op_cls;
+                    case 0x00EE -> CPU::op_ret;
+                    case 0x00FB -> CPU::op_scr;
+                    case 0x00FC -> CPU::op_scl;
+                    case 0x00FD -> CPU::op_exit;
+                    case 0x00FE -> CPU::op_low;
+                    case 0x00FF -> CPU::op_high;
+                    default -> CPU::op_sys;
+                };
+            case 0x1:
+                return CPU::op_jp;
+            case 0x2:
+                return CPU::op_call;
+            case 0x3:
+                return CPU::op_se_byte;
+            case 0x4:
+                return CPU::op_sne_byte;
+            case 0x5:
+                return switch (n) {
+                    case 0x2 -> CPU::op_ld_range_i;
+                    case 0x3 -> CPU::op_ld_range_vx;
+                    default -> CPU::op_se_reg;
+                };
+            case 0x6:
+                return CPU::op_ld_byte;
+            case 0x7:
+                return CPU::op_add_byte;
+            case 0x8:
+                return switch (n) {
+                    case 0x0 -> CPU::op_ld_reg;
+                    case 0x1 -> CPU::op_or;
+                    case 0x2 -> CPU::op_and;
+                    case 0x3 -> CPU::op_xor;
+                    case 0x4 -> CPU::op_add_reg;
+                    case 0x5 -> CPU::op_sub;
+                    case 0x6 -> CPU::op_shr;
+                    case 0x7 -> CPU::op_subn;
+                    case 0xE -> CPU::op_shl;
+                    default -> INVALID;
+                };
+            case 0x9:
+                return CPU::op_sne_reg;
+            case 0xA:
+                return CPU::op_ld_i;
+            case 0xB:
+                return CPU::op_jp_v0;
+            case 0xC:
+                return CPU::op_rnd;
+            case 0xD:
+                return CPU::op_drw;
+            case 0xE:
+                return switch (kk) {
+                    case 0x9E -> CPU::op_skp;
+                    case 0xA1 -> CPU::op_sknp;
+                    default -> INVALID;
+                };
+            default:
+                if (opcode == 0xF000)
+                    return CPU::op_ld_i_long;
+                return switch (kk) {
+                    case 0x01 -> CPU::op_plane;
+                    case 0x07 -> CPU::op_ld_vx_dt;
+                    case 0x0A -> CPU::op_ld_vx_k;
+                    case 0x15 -> CPU::op_ld_dt_vx;
+                    case 0x18 -> CPU::op_ld_st_vx;
+                    case 0x1E -> CPU::op_add_i_vx;
+                    case 0x29 -> CPU::op_ld_f_vx;
+                    case 0x30 -> CPU::op_ld_hf_vx;
+                    case 0x33 -> CPU::op_ld_b_vx;
+                    case 0x55 -> CPU::op_ld_i_array_vx;
+                    case 0x65 -> CPU::op_ld_vx_i_array;
+                    case 0x75 -> CPU::op_ld_r_vx;
+                    case 0x85 -> CPU::op_ld_vx_r;
+                    default -> INVALID;
+                };
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Turns opcodes into readable instructions, for tracing and debugging tools.
+ * The CPU never uses it: decoding for execution is done by the Decoder table, without allocating.
+ */
+public class Disassembler {
+    // Operand of each general purpose register, indexed by register number. Operand.values() would copy the array.
+    private static final Instruction.Operand[] registers = new Instruction.Operand[]{
+            Instruction.Operand.V0, Instruction.Operand.V1, Instruction.Operand.V2, Instruction.Operand.V3,
+            Instruction.Operand.V4, Instruction.Operand.V5, Instruction.Operand.V6, Instruction.Operand.V7,
+            Instruction.Operand.V8, Instruction.Operand.V9, Instruction.Operand.VA, Instruction.Operand.VB,
+            Instruction.Operand.VC, Instruction.Operand.VD, Instruction.Operand.VE, Instruction.Operand.VF
+    };
+
+    private Disassembler() {
+    }
+
+    /**
+     * Decodes an opcode into an instruction.
+     * @param opcode Unsigned opcode, 0x0000 to 0xFFFF.
+     * @return The instruction, or null if the opcode can't be decoded.
+     */
+    public static Instruction disassemble(int opcode) {
+        Instruction.Operand vx = registers[(opcode & 0x0F00) >> 8];
+        Instruction.Operand vy = registers[(opcode & 0x00F0) >> 4];
+        byte n = (byte) (opcode & 0x000F);
+        byte kk = (byte) opcode;
+        short nnn = (short) (opcode & 0x0FFF);
+
+        return switch ((opcode & 0xF000) >> 12) {
+            case 0x0 -> switch (opcode) {
+                case 0x00E0 -> new Instruction(Instruction.Instructions.CLS);
+                case 0x00EE -> new Instruction(Instruction.Instructions.RET);
+                case 0x00FB -> new Instruction(Instruction.Instructions.SCR);
+                case 0x00FC -> new Instruction(Instruction.Instructions.SCL);
+                case 0x00FD -> new Instruction(Instruction.Instructions.EXIT);
+                case 0x00FE -> new Instruction(Instruction.Instructions.LOW);
+                case 0x00FF -> new Instruction(Instruction.Instructions.HIGH);
+                default -> switch (opcode & 0xFFF0) {
+                    case 0x00C0 -> new Instruction(Instruction.Instructions.SCD, (short) n);
+                    case 0x00D0 -> new Instruction(Instruction.Instructions.SCU, (short) n);
+                    default -> new Instruction(Instruction.Instructions.SYS, nnn);
+                };
+            };
+            case 0x1 -> new Instruction(Instruction.Instructions.JP, nnn);
+            case 0x2 -> new Instruction(Instruction.Instructions.CALL, nnn);
+            case 0x3 -> new Instruction(Instruction.Instructions.SE, vx, null, kk);
+            case 0x4 -> new Instruction(Instruction.Instructions.SNE, vx, null, kk);
+            case 0x5 -> switch (n) {
+                case 0x2 -> new Instruction(Instruction.Instructions.SAVE, vx, vy);
+                case 0x3 -> new Instruction(Instruction.Instructions.LOAD, vx, vy);
+                default -> new Instruction(Instruction.Instructions.SE, vx, vy);
+            };
+            case 0x6 -> new Instruction(Instruction.Instructions.LD, vx, null, kk);
+            case 0x7 -> new Instruction(Instruction.Instructions.ADD, vx, null, kk);
+            case 0x8 -> switch (n) {
+                case 0x0 -> new Instruction(Instruction.Instructions.LD, vx, vy);
+                case 0x1 -> new Instruction(Instruction.Instructions.OR, vx, vy);
+                case 0x2 -> new Instruction(Instruction.Instructions.AND, vx, vy);
+                case 0x3 -> new Instruction(Instruction.Instructions.XOR, vx, vy);
+                case 0x4 -> new Instruction(Instruction.Instructions.ADD, vx, vy);
+                case 0x5 -> new Instruction(Instruction.Instructions.SUB, vx, vy);
+                case 0x6 -> new Instruction(Instruction.Instructions.SHR, vx, null);
+                case 0x7 -> new Instruction(Instruction.Instructions.SUBN, vx, vy);
+                case 0xE -> new Instruction(Instruction.Instructions.SHL, vx, null);
+                default -> null;
+            };
+            case 0x9 -> new Instruction(Instruction.Instructions.SNE, vx, vy);
+            case 0xA -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.I, null, nnn);
+            case 0xB -> new Instruction(Instruction.Instructions.JP, Instruction.Operand.V0, null, nnn);
+            case 0xC -> new Instruction(Instruction.Instructions.RND, vx, null, kk);
+            case 0xD -> new Instruction(Instruction.Instructions.DRW, vx, vy, n);
+            case 0xE -> switch (kk & 0xFF) {
+                case 0x9E -> new Instruction(Instruction.Instructions.SKP, vx, null);
+                case 0xA1 -> new Instruction(Instruction.Instructions.SKNP, vx, null);
+                default -> null;
+            };
+            default -> opcode == 0xF000 ? new Instruction(Instruction.Instructions.LD, Instruction.Operand.I, Instruction.Operand.NEXT) : switch (kk & 0xFF) {
+                case 0x01 -> new Instruction(Instruction.Instructions.PLANE, (short) ((opcode & 0x0F00) >> 8));
+                case 0x07 -> new Instruction(Instruction.Instructions.LD, vx, Instruction.Operand.DT);
+                case 0x0A -> new Instruction(Instruction.Instructions.LD, vx, Instruction.Operand.K);
+                case 0x15 -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.DT, vx);
+                case 0x18 -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.ST, vx);
+                case 0x1E -> new Instruction(Instruction.Instructions.ADD, Instruction.Operand.I, vx);
+                case 0x29 -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.F, vx);
+                case 0x30 -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.HF, vx);
+                case 0x33 -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.B, vx);
+                case 0x55 -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.I_ARRAY, vx);
+                case 0x65 -> new Instruction(Instruction.Instructions.LD, vx, Instruction.Operand.I_ARRAY);
+                case 0x75 -> new Instruction(Instruction.Instructions.LD, Instruction.Operand.R, vx);
+                case 0x85 -> new Instruction(Instruction.Instructions.LD, vx, Instruction.Operand.R);
+                default -> null;
+            };
+        };
+    }
+
+    /**
+     * Formats a single line of a listing, e.g. "0x0200: 0x6A02  LD VA, 0x02 (2)".
+     */
+    public static String format(int address, int opcode) {
+        Instruction instruction = disassemble(opcode);
+        return String.format("0x%04X: 0x%04X  %s", address, opcode, instruction == null ? "???" : instruction);
+    }
+
+    /**
+     * Disassembles a whole program, one instruction per line.
+     * @param program The program bytes.
+     * @param origin Address of the first byte, usually 0x200.
+     */
+    public static String listing(byte[] program, int origin) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < program.length; i += 2) {
+            int opcode = ((program[i] & 0xFF) << 8) | (program[i + 1] & 0xFF);
+            sb.append(format(origin + i, opcode)).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
@@ -1,39 +1,397 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
- * Display uses 64x32 monochrome panel. Each pixel is 1 or 0.
+ * Display uses 64x32 monochrome panel, or 128x64 in SUPER-CHIP high resolution mode. Each pixel is 1 or 0.
+ * XO-CHIP adds a second bitplane: each pixel is then 0-3, one bit per plane, and Fn01 selects the planes drawn on.
+ * Pixels are bit-packed, two longs per row: the most significant bit of the first long is column 0, the least significant
+ * bit of the second long is column 127. In low resolution only the first long of the first 32 rows is used.
+ * This way a sprite row is drawn with a rotate, an AND (collision) and a XOR, and scrolling moves whole longs:
+ * an array copy of rows (vertical), or a shift of the two longs of each row (horizontal), never a loop over pixels.
+ * Each plane is its own array, and every operation only runs over the selected planes: two planes cost twice one plane.
  */
 public class Display {
+    // Low resolution
     public static final int COLS = 64;
     public static final int ROWS = 32;
+    // High resolution (SUPER-CHIP)
+    public static final int HIRES_COLS = 128;
+    public static final int HIRES_ROWS = 64;
+    public static final int WORDS_PER_ROW = 2;
+    // Bitplanes (XO-CHIP)
+    public static final int PLANES = 2;
+    public static final int PLANE_WORDS = HIRES_ROWS * WORDS_PER_ROW;
+
+    // Bytes written by save_state: the mode, the selected planes, then every row of every plane.
+    public static final int STATE_SIZE = 1 + 1 + PLANES * PLANE_WORDS * 8;
+
+    // Sprite addresses wrap around the end of memory, as I does.
+    private static final int ADDRESS_MASK = CPU.MEMORY_SIZE - 1;
+
+    // Per plane: 64 rows, each row holds 128 columns in two longs
+    private final long[][] planes = new long[PLANES][PLANE_WORDS];
+    // Planes CLS, DRW and the scrolls work on, bit N is plane N. CHIP-8 and SUPER-CHIP only use the first plane.
+    private int plane_mask = 1;
 
-    // Rows: 32, Cols: 64
-    private final boolean[][] pixels = new boolean[32][64];
+    private boolean hires;
+    // Size of the current mode
+    private int cols = COLS;
+    private int rows = ROWS;
+
+    // Rows changed since the last take_dirty_rows(), bit N is row N. -1 after a mode change: everything.
+    private long dirty_rows;
+    // Draw operations (CLS, DRW, scrolls) since the last take_draw_count().
+    private int draw_count;
 
     private static final Logger logger = LoggerFactory.getLogger(Display.class);
 
-    // Clear display
+    // Clear display (the selected planes)
     public void cls() {
-        for (int row = 0; row < 32; row ++)
-            for (int col = 0; col < 64; col ++)
-                pixels[row][col] = false;
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((plane_mask & (1 << plane)) == 0)
+                continue;
+            long[] pixels = planes[plane];
+            for (int row = 0; row < rows; row++)
+                if ((pixels[row << 1] | pixels[(row << 1) + 1]) != 0)
+                    dirty_rows |= 1L << row;
+            Arrays.fill(pixels, 0);
+        }
+        draw_count++;
+    }
+
+    /**
+     * Switches between 64x32 and 128x64 (00FE, 00FF). All planes are cleared when the mode changes.
+     */
+    public void set_hires(boolean hires) {
+        if (hires == this.hires)
+            return;
+        this.hires = hires;
+        cols = hires ? HIRES_COLS : COLS;
+        rows = hires ? HIRES_ROWS : ROWS;
+        for (long[] pixels : planes)
+            Arrays.fill(pixels, 0);
+        dirty_rows = -1L;
+        draw_count++;
+    }
+
+    public boolean is_hires() {
+        return hires;
+    }
+
+    /**
+     * Selects the planes drawn on (Fn01).
+     * @param mask Bit N is plane N, 0 to 3. With 0 nothing is drawn.
+     */
+    public void set_plane_mask(int mask) {
+        this.plane_mask = mask & ((1 << PLANES) - 1);
+    }
+
+    public int get_plane_mask() {
+        return plane_mask;
+    }
+
+    /**
+     * Width of the current mode, 64 or 128.
+     */
+    public int get_cols() {
+        return cols;
+    }
+
+    /**
+     * Height of the current mode, 32 or 64.
+     */
+    public int get_rows() {
+        return rows;
     }
 
+    /**
+     * True if the pixel is lit in any plane.
+     */
     public boolean getPixel(int row, int col) {
-        col = col % 64;
-        row = row % 32;
-        col = Math.abs(col);
-        row = Math.abs(row);
-        return pixels[row][col];
+        return get_color(row, col) != 0;
     }
 
+    /**
+     * Color of a pixel, 0 to 3: bit N is set if the pixel is lit in plane N.
+     */
+    public int get_color(int row, int col) {
+        col &= cols - 1;
+        int index = ((row & (rows - 1)) << 1) + (col >> 6);
+        long mask = column_mask(col);
+        int color = 0;
+        for (int plane = 0; plane < PLANES; plane++)
+            if ((planes[plane][index] & mask) != 0)
+                color |= 1 << plane;
+        return color;
+    }
+
+    /**
+     * Sets a pixel in the selected planes.
+     */
     public void setPixel(int row, int col, boolean value) {
-        col = col % 64;
-        row = row % 32;
-        col = Math.abs(col);
-        row = Math.abs(row);
-        pixels[row][col] = value;
+        row = row & (rows - 1);
+        col &= cols - 1;
+        int index = (row << 1) + (col >> 6);
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((plane_mask & (1 << plane)) == 0)
+                continue;
+            if (value)
+                planes[plane][index] |= column_mask(col);
+            else
+                planes[plane][index] &= ~column_mask(col);
+        }
+        dirty_rows |= 1L << row;
         //logger.debug("Pixel set: ("+row+", "+col+") = " + value);
     }
+
+    /**
+     * XORs an 8 pixel wide sprite onto the display. Sprite rows and columns wrap around the screen edges.
+     * @param memory Memory holding the sprite, one byte per row, the most significant bit is the leftmost pixel.
+     * @param address Address of the first sprite row.
+     * @param height Number of sprite rows.
+     * @param col Screen column of the sprite's leftmost pixel, within the current mode.
+     * @param row Screen row of the sprite's top row, within the current mode.
+     * @return True if any lit pixel was erased (collision).
+     */
+    public boolean draw_sprite(byte[] memory, int address, int height, int col, int row) {
+        return draw_sprite(memory, address, height, false, col, row) != 0;
+    }
+
+    /**
+     * XORs a sprite onto each selected plane. Sprite rows and columns wrap around the screen edges.
+     * With two planes selected, the sprite data for the second plane follows the data for the first (XO-CHIP).
+     * @param wide True for a 16 pixel wide sprite (Dxy0), two bytes per row, else 8 pixels, one byte per row.
+     * @return The number of sprite rows that erased a lit pixel (collision) in any plane.
+     */
+    public int draw_sprite(byte[] memory, int address, int height, boolean wide, int col, int row) {
+        int sprite_bytes = wide ? 2 * height : height;
+        int collided = 0;
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((plane_mask & (1 << plane)) == 0)
+                continue;
+            collided |= draw_plane(planes[plane], memory, address, height, wide, col, row);
+            address += sprite_bytes;
+        }
+        draw_count++;
+        return Integer.bitCount(collided);
+    }
+
+    /**
+     * XORs a sprite onto a plane.
+     * @return The sprite rows that collided, bit N is sprite row N.
+     */
+    private int draw_plane(long[] pixels, byte[] memory, int address, int height, boolean wide, int col, int row) {
+        int collided = 0;
+        for (int i = 0; i < height; i++) {
+            // Place the sprite row at column 0 (the top bits of the first long), then rotate it to its column.
+            long sprite_row = wide
+                    ? (((memory[(address + 2 * i) & ADDRESS_MASK] & 0xFFL) << 8) | (memory[(address + 2 * i + 1) & ADDRESS_MASK] & 0xFFL)) << 48
+                    : (memory[(address + i) & ADDRESS_MASK] & 0xFFL) << 56;
+            int r = (row + i) & (rows - 1);
+            int index = r << 1;
+            long collision;
+            if (!hires) {
+                // Rotation wraps the right edge to the left.
+                sprite_row = Long.rotateRight(sprite_row, col);
+                long old = pixels[index];
+                pixels[index] = old ^ sprite_row;
+                collision = old & sprite_row;
+            } else {
+                // Same rotation, over the 128 bits of the two longs.
+                long left = sprite_row;
+                long right = 0;
+                int shift = col;
+                if (shift >= 64) {
+                    right = left;
+                    left = 0;
+                    shift -= 64;
+                }
+                if (shift != 0) {
+                    long carry_left = right << (64 - shift);
+                    long carry_right = left << (64 - shift);
+                    left = (left >>> shift) | carry_left;
+                    right = (right >>> shift) | carry_right;
+                }
+                long old_left = pixels[index];
+                long old_right = pixels[index + 1];
+                pixels[index] = old_left ^ left;
+                pixels[index + 1] = old_right ^ right;
+                collision = (old_left & left) | (old_right & right);
+                sprite_row = left | right;
+            }
+            if (collision != 0)
+                collided |= 1 << i;
+            if (sprite_row != 0)
+                dirty_rows |= 1L << r;
+        }
+        return collided;
+    }
+
+    /**
+     * Scrolls the selected planes down by n rows (00Cn), the top rows become blank. A single array copy per plane.
+     */
+    public void scroll_down(int n) {
+        n = Math.min(n, rows);
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((plane_mask & (1 << plane)) == 0)
+                continue;
+            long[] pixels = planes[plane];
+            System.arraycopy(pixels, 0, pixels, n * WORDS_PER_ROW, (rows - n) * WORDS_PER_ROW);
+            Arrays.fill(pixels, 0, n * WORDS_PER_ROW, 0);
+        }
+        scrolled();
+    }
+
+    /**
+     * Scrolls the selected planes up by n rows (00Dn), the bottom rows become blank. A single array copy per plane.
+     */
+    public void scroll_up(int n) {
+        n = Math.min(n, rows);
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((plane_mask & (1 << plane)) == 0)
+                continue;
+            long[] pixels = planes[plane];
+            System.arraycopy(pixels, n * WORDS_PER_ROW, pixels, 0, (rows - n) * WORDS_PER_ROW);
+            Arrays.fill(pixels, (rows - n) * WORDS_PER_ROW, rows * WORDS_PER_ROW, 0);
+        }
+        scrolled();
+    }
+
+    /**
+     * Scrolls the selected planes right by n columns (00FB scrolls 4), the left columns become blank.
+     * @param n 1 to 63.
+     */
+    public void scroll_right(int n) {
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((plane_mask & (1 << plane)) == 0)
+                continue;
+            long[] pixels = planes[plane];
+            for (int index = 0; index < rows * WORDS_PER_ROW; index += WORDS_PER_ROW) {
+                // The right long gets the bits shifted out of the left one, in low resolution they fall off the screen.
+                if (hires)
+                    pixels[index + 1] = (pixels[index + 1] >>> n) | (pixels[index] << (64 - n));
+                pixels[index] >>>= n;
+            }
+        }
+        scrolled();
+    }
+
+    /**
+     * Scrolls the selected planes left by n columns (00FC scrolls 4), the right columns become blank.
+     * @param n 1 to 63.
+     */
+    public void scroll_left(int n) {
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((plane_mask & (1 << plane)) == 0)
+                continue;
+            long[] pixels = planes[plane];
+            for (int index = 0; index < rows * WORDS_PER_ROW; index += WORDS_PER_ROW) {
+                pixels[index] = (pixels[index] << n) | (pixels[index + 1] >>> (64 - n));
+                pixels[index + 1] <<= n;
+            }
+        }
+        scrolled();
+    }
+
+    private void scrolled() {
+        // Every row may have moved.
+        dirty_rows |= -1L >>> (64 - rows);
+        draw_count++;
+    }
+
+    /**
+     * Returns the rows changed since the last call (bit N is row N), and clears them.
+     * After a mode change, returns -1: every row of both modes.
+     */
+    public long take_dirty_rows() {
+        long rows = dirty_rows;
+        dirty_rows = 0;
+        return rows;
+    }
+
+    /**
+     * Returns the number of draw operations (CLS, DRW, scrolls) since the last call, and resets it.
+     */
+    public int take_draw_count() {
+        int count = draw_count;
+        draw_count = 0;
+        return count;
+    }
+
+    /**
+     * Returns the packed pixels of a low resolution row of the first plane, the most significant bit is column 0.
+     */
+    public long get_row(int row) {
+        return planes[0][row << 1];
+    }
+
+    /**
+     * Returns one long of a row of the first plane: word 0 is columns 0-63, word 1 columns 64-127 (always 0 in low resolution).
+     */
+    public long get_row(int row, int word) {
+        return planes[0][(row << 1) + word];
+    }
+
+    /**
+     * Returns one long of a row of a plane, see get_row.
+     */
+    public long get_plane_row(int plane, int row, int word) {
+        return planes[plane][(row << 1) + word];
+    }
+
+    /**
+     * Writes the mode, the selected planes and the pixels at the buffer's position (STATE_SIZE bytes).
+     */
+    void save_state(ByteBuffer buffer) {
+        buffer.put((byte) (hires ? 1 : 0));
+        buffer.put((byte) plane_mask);
+        for (long[] pixels : planes)
+            for (long word : pixels)
+                buffer.putLong(word);
+    }
+
+    /**
+     * Reads back the state written by save_state. Marks every row dirty, so the screen is presented again.
+     */
+    void load_state(ByteBuffer buffer) {
+        boolean hires = buffer.get() != 0;
+        this.hires = hires;
+        cols = hires ? HIRES_COLS : COLS;
+        rows = hires ? HIRES_ROWS : ROWS;
+        set_plane_mask(buffer.get());
+        for (long[] pixels : planes)
+            for (int i = 0; i < pixels.length; i++)
+                pixels[i] = buffer.getLong();
+        dirty_rows = -1L;
+        draw_count++;
+    }
+
+    /**
+     * Copies all rows of all planes into rows (PLANES x PLANE_WORDS longs, plane by plane), e.g. a frame handed to another thread.
+     */
+    public void copy_rows(long[] rows) {
+        for (int plane = 0; plane < PLANES; plane++)
+            System.arraycopy(planes[plane], 0, rows, plane * PLANE_WORDS, PLANE_WORDS);
+    }
+
+    /**
+     * FNV-1a hash of the pixel colors, in the current mode. Two runs that end with the same screen have the same hash.
+     */
+    public long hash() {
+        long hash = 0xcbf29ce484222325L;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                hash ^= get_color(row, col);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    private static long column_mask(int col) {
+        return Long.MIN_VALUE >>> (col & 63);
+    }
 }
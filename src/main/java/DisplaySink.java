@@ -0,0 +1,16 @@
+/**
+ * Receives finished frames from the FramePresenter, at most once per 60 Hz frame.
+ * The Swing Window shows them on screen, headless runs can simply ignore them.
+ */
+public interface DisplaySink {
+    /**
+     * Sink that ignores all updates. Used when running without a window.
+     */
+    DisplaySink NONE = dirty_rows -> {};
+
+    /**
+     * Called after a frame in which the display changed.
+     * @param dirty_rows Rows changed since the previous present, bit N is row N. Never 0.
+     */
+    void present(long dirty_rows);
+}
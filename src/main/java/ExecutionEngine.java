@@ -0,0 +1,12 @@
+/**
+ * Executes CHIP-8 instructions in batches. The Scheduler runs one batch per 60 Hz frame.
+ * Implemented by the CPU itself (plain interpreter) and by the faster execution modes built on top of it.
+ */
+public interface ExecutionEngine {
+    /**
+     * Executes a batch of instructions.
+     * @param budget Number of instructions to execute.
+     * @return Number of instructions executed. Less than the budget when the CPU waits for a key (Fx0A).
+     */
+    int execute(int budget);
+}
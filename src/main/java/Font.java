@@ -17,4 +17,24 @@ public class Font {
             (byte) 0xF0, (byte) 0x80, (byte) 0xF0, (byte) 0x80, (byte) 0xF0, // E
             (byte) 0xF0, (byte) 0x80, (byte) 0xF0, (byte) 0x80, (byte) 0x80  // F
     };
+
+    // Large digits, 8x10 pixels, 10 bytes each (Fx30). SUPER-CHIP has 0-9, XO-CHIP adds A-F.
+    public static byte[] big_font_palette = new byte[]{
+            (byte) 0x3C, (byte) 0x7E, (byte) 0xE7, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xE7, (byte) 0x7E, (byte) 0x3C, // 0
+            (byte) 0x18, (byte) 0x38, (byte) 0x58, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0x18, (byte) 0x3C, // 1
+            (byte) 0x3E, (byte) 0x7F, (byte) 0xC3, (byte) 0x06, (byte) 0x0C, (byte) 0x18, (byte) 0x30, (byte) 0x60, (byte) 0xFF, (byte) 0xFF, // 2
+            (byte) 0x3C, (byte) 0x7E, (byte) 0xC3, (byte) 0x03, (byte) 0x0E, (byte) 0x0E, (byte) 0x03, (byte) 0xC3, (byte) 0x7E, (byte) 0x3C, // 3
+            (byte) 0x06, (byte) 0x0E, (byte) 0x1E, (byte) 0x36, (byte) 0x66, (byte) 0xC6, (byte) 0xFF, (byte) 0xFF, (byte) 0x06, (byte) 0x06, // 4
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFC, (byte) 0xFE, (byte) 0x03, (byte) 0xC3, (byte) 0x7E, (byte) 0x3C, // 5
+            (byte) 0x3E, (byte) 0x7C, (byte) 0xC0, (byte) 0xC0, (byte) 0xFC, (byte) 0xFE, (byte) 0xC3, (byte) 0xC3, (byte) 0x7E, (byte) 0x3C, // 6
+            (byte) 0xFF, (byte) 0xFF, (byte) 0x03, (byte) 0x06, (byte) 0x0C, (byte) 0x18, (byte) 0x30, (byte) 0x60, (byte) 0x60, (byte) 0x60, // 7
+            (byte) 0x3C, (byte) 0x7E, (byte) 0xC3, (byte) 0xC3, (byte) 0x7E, (byte) 0x7E, (byte) 0xC3, (byte) 0xC3, (byte) 0x7E, (byte) 0x3C, // 8
+            (byte) 0x3C, (byte) 0x7E, (byte) 0xC3, (byte) 0xC3, (byte) 0x7F, (byte) 0x3F, (byte) 0x03, (byte) 0x03, (byte) 0x3E, (byte) 0x7C, // 9
+            (byte) 0x3C, (byte) 0x7E, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xFF, (byte) 0xFF, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, // A
+            (byte) 0xFC, (byte) 0xFE, (byte) 0xC3, (byte) 0xC3, (byte) 0xFE, (byte) 0xFE, (byte) 0xC3, (byte) 0xC3, (byte) 0xFE, (byte) 0xFC, // B
+            (byte) 0x3C, (byte) 0x7E, (byte) 0xC3, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC3, (byte) 0x7E, (byte) 0x3C, // C
+            (byte) 0xFC, (byte) 0xFE, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xC3, (byte) 0xFE, (byte) 0xFC, // D
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFC, (byte) 0xFC, (byte) 0xC0, (byte) 0xC0, (byte) 0xFF, (byte) 0xFF, // E
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xC0, (byte) 0xC0, (byte) 0xFC, (byte) 0xFC, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0, (byte) 0xC0  // F
+    };
 }
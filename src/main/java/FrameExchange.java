@@ -0,0 +1,98 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands finished frames from the emulation thread to the Swing EDT, without locks and without tearing.
+ * Triple buffered: the producer fills its back frame and publishes it with one atomic swap, the consumer takes the
+ * latest published frame with another swap. Neither thread ever waits for the other, and each only touches
+ * a frame it owns, so the consumer always sees a complete frame.
+ *
+ * A published frame replaced before the consumer took it is dropped (the consumer only cares about the latest).
+ */
+public class FrameExchange {
+    /**
+     * A copy of the display, two packed longs per row (see Display), plane after plane.
+     */
+    public static final class Frame {
+        private final long[] rows = new long[Display.PLANES * Display.PLANE_WORDS];
+        private boolean hires;
+        // True once the consumer is done with it: nothing new to take.
+        private boolean stale = true;
+        private long number;
+
+        public long[] get_rows() {
+            return rows;
+        }
+
+        /**
+         * True for a 128x64 frame, else only the first long of the first 32 rows is used.
+         */
+        public boolean is_hires() {
+            return hires;
+        }
+
+        /**
+         * Number of the frame, 1 for the first frame produced.
+         */
+        public long get_number() {
+            return number;
+        }
+    }
+
+    // Latest published frame, or a stale frame given back by the consumer.
+    private final AtomicReference<Frame> ready = new AtomicReference<>(new Frame());
+    // Owned by the producer
+    private Frame back = new Frame();
+    // Owned by the consumer
+    private Frame front = new Frame();
+
+    /**
+     * Counters, each written by a single thread.
+     */
+    private volatile long produced;
+    private volatile long consumed;
+    private volatile long dropped;
+
+    /**
+     * Copies the display and publishes it as the latest frame. Called by the emulation thread.
+     */
+    public void publish(Display display) {
+        display.copy_rows(back.rows);
+        back.hires = display.is_hires();
+        back.number = produced + 1;
+        back.stale = false;
+        Frame previous = ready.getAndSet(back);
+        produced = back.number;
+        if (!previous.stale)
+            dropped++;
+        back = previous;
+    }
+
+    /**
+     * Takes the latest published frame. Called by the consumer thread (EDT).
+     * @return The new frame, or null if nothing was published since the last take.
+     */
+    public Frame take() {
+        // Only the consumer puts stale frames in, so if the frame is fresh now it stays fresh until the swap.
+        if (ready.get().stale)
+            return null;
+        front.stale = true;
+        front = ready.getAndSet(front);
+        consumed++;
+        return front;
+    }
+
+    public long get_produced() {
+        return produced;
+    }
+
+    public long get_consumed() {
+        return consumed;
+    }
+
+    /**
+     * Frames published, then replaced by a newer one before the consumer took them.
+     */
+    public long get_dropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Presents the display to the sink at the end of each 60 Hz frame, only when something changed.
+ * All the CLS and DRW instructions of a frame are coalesced into a single present of the changed rows.
+ * With a FrameExchange, the frame is published to it first, so the sink's thread reads the frame from the exchange
+ * and never the live display.
+ */
+public class FramePresenter {
+    private final Display display;
+    private final DisplaySink sink;
+    private final FrameExchange exchange;
+
+    /**
+     * Counters
+     */
+    private long presented_frames;  // Frames sent to the sink
+    private long skipped_frames;    // Frames with no display change, nothing sent
+    private long draw_count;        // Draw operations (CLS, DRW)
+    private long coalesced_draws;   // Draw operations that did not cause a present of their own
+
+    public FramePresenter(Display display, DisplaySink sink) {
+        this(display, null, sink);
+    }
+
+    /**
+     * @param exchange Receives a copy of each presented frame, may be null.
+     */
+    public FramePresenter(Display display, FrameExchange exchange, DisplaySink sink) {
+        this.display = display;
+        this.exchange = exchange;
+        this.sink = sink;
+    }
+
+    /**
+     * Called once at the end of every frame.
+     */
+    public void end_frame() {
+        int draws = display.take_draw_count();
+        long dirty_rows = display.take_dirty_rows();
+        draw_count += draws;
+
+        if (dirty_rows == 0) {
+            skipped_frames++;
+            coalesced_draws += draws;
+            return;
+        }
+
+        if (exchange != null)
+            exchange.publish(display);
+        sink.present(dirty_rows);
+        presented_frames++;
+        coalesced_draws += Math.max(draws - 1, 0);
+    }
+
+    public FrameExchange get_exchange() {
+        return exchange;
+    }
+
+    public long get_presented_frames() {
+        return presented_frames;
+    }
+
+    public long get_skipped_frames() {
+        return skipped_frames;
+    }
+
+    public long get_draw_count() {
+        return draw_count;
+    }
+
+    public long get_coalesced_draws() {
+        return coalesced_draws;
+    }
+}
@@ -0,0 +1,232 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs a ROM without any window (no AWT / Swing startup), for a fixed number of cycles or frames.
+ * At the end prints the framebuffer hash and the cycle throughput.
+ *
+ * Usage: Headless <rom> [--cycles N | --frames N] [--ipf N] [--seed N] [--engine interpreter|cache|recompiler] [--png FILE] [--trace FILE] [--load-state FILE] [--save-state FILE] [--rewind SECONDS [--rewind-frames N]] [--replay FILE] [--record FILE] [--wav FILE] [--profile PREFIX] [--no-idle-skip]
+ * The ROM is a file path, or a classpath resource such as "other_roms/pong2.ch8".
+ * --png saves the final screen as an image.
+ * --trace records the last instructions, and writes them to FILE at the end of the run, or when the CPU fails.
+ * Print it with TraceDump.
+ * --load-state starts from a saved state instead of power-on, --save-state saves the state at the end.
+ * --rewind keeps the last SECONDS of frames in a RewindBuffer, and steps back --rewind-frames frames at the end.
+ * --replay feeds the keys of an input movie, with the movie's seed and instructions per frame, for the movie's length
+ * unless --frames is given. --record writes the key changes of the run to a movie.
+ * --wav writes the sound of the run to a WAV file.
+ * --no-idle-skip runs every pass of idle loops instead of skipping them (see CPU.is_idle), the result is the same.
+ * --profile writes a guest profile at the end of the run: PREFIX.collapsed, the sampled CALL stacks for flame graph
+ * tools, and PREFIX.hotspots, the most executed addresses with their disassembly. See Profiler.
+ * With -Dchip8.metrics=true, also prints the Metrics counters: instructions per family, draws, frame times.
+ */
+public class Headless {
+    // Each display pixel becomes a square of this size in the snapshot image.
+    private static final int SNAPSHOT_SCALE = 8;
+
+    // A full state every 3 seconds, deltas in between.
+    private static final int REWIND_KEYFRAME_INTERVAL = 3 * Scheduler.FRAMES_PER_SECOND;
+
+    // Addresses listed in the hotspot table of --profile.
+    private static final int PROFILE_HOTSPOTS = 50;
+
+    private static final Logger logger = LoggerFactory.getLogger(Headless.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: Headless <rom> [--cycles N | --frames N] [--ipf N] [--seed N] [--engine interpreter|cache|recompiler] [--png FILE] [--trace FILE] [--load-state FILE] [--save-state FILE] [--rewind SECONDS [--rewind-frames N]] [--replay FILE] [--record FILE] [--wav FILE] [--profile PREFIX] [--no-idle-skip]");
+            System.exit(1);
+        }
+
+        String rom_path = args[0];
+        long cycles = 1_000_000;
+        long frames = -1;
+        int instructions_per_frame = Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME;
+        String engine_name = "interpreter";
+        String png_path = null;
+        String trace_path = null;
+        String profile_prefix = null;
+        boolean idle_skipping = true;
+        String load_state_path = null;
+        String save_state_path = null;
+        int rewind_seconds = 0;
+        int rewind_frames = 0;
+        long seed = CPU.DEFAULT_SEED;
+        String replay_path = null;
+        String record_path = null;
+        String wav_path = null;
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--cycles" -> cycles = Long.parseLong(args[++i]);
+                case "--frames" -> frames = Long.parseLong(args[++i]);
+                case "--ipf" -> instructions_per_frame = Integer.parseInt(args[++i]);
+                case "--engine" -> engine_name = args[++i];
+                case "--png" -> png_path = args[++i];
+                case "--trace" -> trace_path = args[++i];
+                case "--profile" -> profile_prefix = args[++i];
+                case "--no-idle-skip" -> idle_skipping = false;
+                case "--load-state" -> load_state_path = args[++i];
+                case "--save-state" -> save_state_path = args[++i];
+                case "--rewind" -> rewind_seconds = Integer.parseInt(args[++i]);
+                case "--rewind-frames" -> rewind_frames = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--replay" -> replay_path = args[++i];
+                case "--record" -> record_path = args[++i];
+                case "--wav" -> wav_path = args[++i];
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        byte[] program = load_rom(rom_path);
+        logger.debug("Loading ROM, bytes: " + program.length);
+
+        InputMovie replay = null;
+        if (replay_path != null) {
+            replay = InputMovie.read(Path.of(replay_path));
+            seed = replay.get_seed();
+            instructions_per_frame = replay.get_instructions_per_frame();
+            if (frames < 0)
+                frames = replay.get_length();
+        }
+
+        Display display = new Display();
+        Input input = new Input();
+        CPU cpu = new CPU(program, program.length, display, input, seed);
+        FramePresenter presenter = new FramePresenter(display, DisplaySink.NONE);
+        if (trace_path != null)
+            cpu.set_trace(new TraceRecorder(TraceRecorder.DEFAULT_CAPACITY));
+        cpu.set_idle_skipping(idle_skipping);
+        if (profile_prefix != null)
+            cpu.set_profiler(new Profiler(cpu, Profiler.DEFAULT_INTERVAL));
+
+        ExecutionEngine engine = create_engine(engine_name, cpu);
+        if (load_state_path != null)
+            SaveState.read(Path.of(load_state_path)).restore(cpu);
+        Scheduler scheduler = new Scheduler(cpu, engine, presenter, instructions_per_frame);
+        scheduler.set_replay(replay);
+        InputMovie recording = record_path == null ? null : new InputMovie(seed, instructions_per_frame);
+        scheduler.set_recording(recording);
+        WavWriter wav = wav_path == null ? null : new WavWriter(Path.of(wav_path));
+        if (wav != null)
+            scheduler.set_beeper(new Beeper(wav));
+        if (rewind_seconds > 0)
+            scheduler.set_rewind_buffer(new RewindBuffer(rewind_seconds * Scheduler.FRAMES_PER_SECOND, REWIND_KEYFRAME_INTERVAL));
+
+        long start = System.nanoTime();
+        long remainder = 0;
+        try {
+            if (frames >= 0) {
+                scheduler.run_frames(frames);
+            } else {
+                // Timers still tick once per frame worth of instructions.
+                scheduler.run_frames(cycles / instructions_per_frame);
+                remainder = engine.execute((int) (cycles % instructions_per_frame));
+            }
+        } catch (RuntimeException e) {
+            // The trace shows how the program got there.
+            if (trace_path != null)
+                write_trace(cpu.get_trace(), trace_path);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        RewindBuffer rewind_buffer = scheduler.get_rewind_buffer();
+        if (rewind_buffer != null)
+            System.out.println("rewind " + rewind_buffer);
+        if (rewind_buffer != null && rewind_frames > 0) {
+            long rewind_start = System.nanoTime();
+            int rewound = rewind_buffer.rewind(cpu, rewind_frames);
+            System.out.printf("rewound=%d frames in %.1fus%n", rewound, (System.nanoTime() - rewind_start) / 1e3);
+        }
+        cycles = scheduler.get_instructions() + remainder;
+
+        double seconds = elapsed / 1e9;
+        System.out.printf("rom=%s cycles=%d time=%.3fs ips=%.0f hash=%016X%n",
+                rom_path, cycles, seconds, cycles / seconds, display.hash());
+        System.out.printf("frames=%d presented=%d skipped=%d draws=%d coalesced=%d idle skipped=%d%n",
+                scheduler.get_frames(), presenter.get_presented_frames(), presenter.get_skipped_frames(),
+                presenter.get_draw_count(), presenter.get_coalesced_draws(), cpu.get_skipped_instructions());
+        if (engine instanceof Recompiler recompiler)
+            System.out.printf("compiled blocks=%d block runs=%d interpreted=%d invalidations=%d%n",
+                    recompiler.get_compiled_blocks(), recompiler.get_block_runs(),
+                    recompiler.get_interpreted_instructions(), recompiler.get_invalidations());
+        if (engine instanceof DecodeCache cache)
+            System.out.printf("cache hits=%d misses=%d invalidations=%d%n",
+                    cache.get_hits(), cache.get_misses(), cache.get_invalidations());
+        if (Metrics.ENABLED) {
+            // Instructions run after the last frame are still pending.
+            cpu.get_metrics().flush();
+            System.out.print("metrics " + cpu.get_metrics());
+        }
+
+        if (wav != null) {
+            wav.close();
+            System.out.printf("wav: %d beep frames of %d, %d bytes written to %s%n",
+                    scheduler.get_beeper().get_beep_frames(), scheduler.get_beeper().get_frames(), wav.get_data_bytes(), wav_path);
+        }
+
+        if (png_path != null)
+            ImageIO.write(new Renderer().snapshot(display, SNAPSHOT_SCALE), "png", new File(png_path));
+        if (trace_path != null)
+            write_trace(cpu.get_trace(), trace_path);
+        if (profile_prefix != null)
+            write_profile(cpu.get_profiler(), profile_prefix);
+        if (save_state_path != null)
+            SaveState.of(cpu).write(Path.of(save_state_path));
+        if (recording != null) {
+            recording.set_length(scheduler.get_frames());
+            recording.write(Path.of(record_path));
+        }
+    }
+
+    private static void write_trace(TraceRecorder trace, String path) throws IOException {
+        trace.write(Path.of(path));
+        System.err.printf("trace: %d of %d instructions written to %s%n", trace.get_size(), trace.get_count(), path);
+    }
+
+    private static void write_profile(Profiler profiler, String prefix) throws IOException {
+        profiler.write_collapsed(Path.of(prefix + ".collapsed"));
+        profiler.write_hotspots(Path.of(prefix + ".hotspots"), PROFILE_HOTSPOTS);
+        System.err.printf("profile: %d instructions, %d samples written to %s.collapsed and %s.hotspots%n",
+                profiler.get_instructions(), profiler.get_samples(), prefix, prefix);
+    }
+
+    /**
+     * Creates the execution engine of the cpu by name: interpreter, cache or recompiler.
+     */
+    public static ExecutionEngine create_engine(String name, CPU cpu) {
+        return switch (name) {
+            case "interpreter" -> cpu;
+            case "cache" -> new DecodeCache(cpu);
+            case "recompiler" -> new Recompiler(cpu);
+            default -> throw new IllegalArgumentException("Unknown engine: " + name);
+        };
+    }
+
+    /**
+     * Reads a ROM from the file system, or from the classpath if no such file exists.
+     * @throws IOException If the ROM can't be read, or doesn't fit in RAM.
+     */
+    public static byte[] load_rom(String path) throws IOException {
+        Path file = Path.of(path);
+        if (Files.isRegularFile(file))
+            return RomLibrary.read(file);
+
+        try (InputStream inputStream = Headless.class.getClassLoader().getResourceAsStream(path)) {
+            if (inputStream == null)
+                throw new FileNotFoundException("ROM not found: " + path);
+            byte[] program = inputStream.readAllBytes();
+            RomLibrary.check_size(program.length, path);
+            return program;
+        }
+    }
+}
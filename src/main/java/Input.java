@@ -3,28 +3,17 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * This class listens to keyboard input. It updates the local keypad variable. Each tick, the CPU keypad will be updated to be equal to this local keypad.
+ * This class listens to keyboard input. Key presses and releases are queued on the EDT, and the emulation thread
+ * applies them to the CPU keypad between frames (see poll), so the keys never change in the middle of a frame.
  */
 public class Input extends KeyAdapter {
-
-    private final boolean[] keypad = new boolean[16];
-
-    private static final Logger logger = LoggerFactory.getLogger(Input.class);
-
-    private final Map<Character, Integer> keyboard_to_keypad_index_map;
-
-    private static final char[] allowed_keys = new char[]{
-            '1','2','3','4',
-            'q','w','e','r',
-            'a','s','d','f',
-            'z','x','c','v'
-    };
-
     /**
-     * Responsible for handling keyboard input and mapping to CHIP-8 keypad.
+     * Default key codes of the keypad keys, indexed by keypad key.
      * Map:
      * Chip-8 Key  Keyboard
      * ----------  ---------
@@ -33,74 +22,217 @@ public class Input extends KeyAdapter {
      *   7 8 9 E    a s d f
      *   A 0 B F    z x c v
      */
-    public Input() {
-        keyboard_to_keypad_index_map = new HashMap<>();
-        keyboard_to_keypad_index_map.put('1', 1);
-        keyboard_to_keypad_index_map.put('2', 2);
-        keyboard_to_keypad_index_map.put('3', 3);
-        keyboard_to_keypad_index_map.put('4', 0xC);
+    public static final int[] DEFAULT_LAYOUT = new int[]{
+            KeyEvent.VK_X, KeyEvent.VK_1, KeyEvent.VK_2, KeyEvent.VK_3,
+            KeyEvent.VK_Q, KeyEvent.VK_W, KeyEvent.VK_E, KeyEvent.VK_A,
+            KeyEvent.VK_S, KeyEvent.VK_D, KeyEvent.VK_Z, KeyEvent.VK_C,
+            KeyEvent.VK_4, KeyEvent.VK_R, KeyEvent.VK_F, KeyEvent.VK_V
+    };
 
-        keyboard_to_keypad_index_map.put('q', 4);
-        keyboard_to_keypad_index_map.put('w', 5);
-        keyboard_to_keypad_index_map.put('e', 6);
-        keyboard_to_keypad_index_map.put('r', 0xD);
+    // Key codes at or above this can't be mapped. Covers all the keys of a normal keyboard.
+    private static final int KEY_CODES = 1024;
+    private static final int QUEUE_CAPACITY = 256;
 
-        keyboard_to_keypad_index_map.put('a', 7);
-        keyboard_to_keypad_index_map.put('s', 8);
-        keyboard_to_keypad_index_map.put('d', 9);
-        keyboard_to_keypad_index_map.put('f', 0xE);
+    // Event encoding in the queue
+    private static final int PRESSED = 0x10;
+
+    private static final Logger logger = LoggerFactory.getLogger(Input.class);
 
-        keyboard_to_keypad_index_map.put('z', 0xA);
-        keyboard_to_keypad_index_map.put('x', 0);
-        keyboard_to_keypad_index_map.put('c', 0xB);
-        keyboard_to_keypad_index_map.put('v', 0xF);
+    // Keypad key of each key code, -1 if not mapped. Only used on the EDT.
+    private final byte[] key_map = new byte[KEY_CODES];
+    // Keys down as seen by the EDT, to drop the key repeats of a held key.
+    private final boolean[] held = new boolean[16];
+
+    private final KeyEventQueue queue = new KeyEventQueue(QUEUE_CAPACITY);
+    // Releases that didn't fit in the full queue, bit N is key N. Never dropped, or the key would stay down.
+    private final AtomicInteger pending_releases = new AtomicInteger();
+    // Thread parked in await_event, woken by the next key event.
+    private volatile Thread waiter;
+
+    /**
+     * Statistics, written by the consumer thread (except dropped_events, by the EDT).
+     */
+    private long applied_events;
+    private volatile long dropped_events;
+    private long latency_sum_nanos;
+    private long latency_max_nanos;
+
+    public Input() {
+        this(DEFAULT_LAYOUT);
     }
 
-    @Override
-    public void keyTyped(KeyEvent e) {
-        super.keyTyped(e);
+    /**
+     * @param layout Key code (KeyEvent.VK_*) of each keypad key, 16 entries.
+     */
+    public Input(int[] layout) {
+        if (layout.length != 16)
+            throw new IllegalArgumentException("Layout must have 16 key codes, got: " + layout.length);
+        Arrays.fill(key_map, (byte) -1);
+        for (int key = 0; key < layout.length; key++)
+            map(layout[key], key);
+    }
+
+    /**
+     * Maps a key code to a keypad key, in addition to the keys already mapped to it. Call before the window shows.
+     * @param keypad_key Keypad key 0x0-0xF, or -1 to unmap the key code.
+     */
+    public void remap(int key_code, int keypad_key) {
+        map(key_code, keypad_key);
+    }
+
+    // Not overridable, the constructor calls it.
+    private void map(int key_code, int keypad_key) {
+        if (key_code < 0 || key_code >= KEY_CODES)
+            throw new IllegalArgumentException("Key code out of range: " + key_code);
+        if (keypad_key < -1 || keypad_key > 0xF)
+            throw new IllegalArgumentException("Keypad key out of range: " + keypad_key);
+        key_map[key_code] = (byte) keypad_key;
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
-        super.keyPressed(e);
-        char keyboard_key = e.getKeyChar();
-        boolean is_valid = is_valid_input(keyboard_key);
-        if (!is_valid)
+        int key = keypad_key(e);
+        if (key < 0 || held[key])
+            return;
+        // Pressed again before its pending release was applied: cancel the release, the key just stays down.
+        if (clear_pending_release(key)) {
+            held[key] = true;
             return;
-        // Convert keyboard key to keypad key
-        //char mapped_keypad_key = this.keymap.get(keyboard_key);
-        // Convert keypad key to keypad index
-        //int keypad_index = this.keypad_map.get(mapped_keypad_key);
-        //logger.debug("Key pressed: '"+e.getKeyChar()+"' -> '"+mapped_keypad_key+"', keypad index: "+keypad_index);
-        int keypad_index = this.keyboard_to_keypad_index_map.get(keyboard_key);
-        this.keypad[keypad_index] = true;
+        }
+        // A dropped press isn't held, the key repeats of the OS try again.
+        held[key] = enqueue(key | PRESSED);
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        super.keyReleased(e);
-        char keyboard_key = e.getKeyChar();
-        boolean is_valid = is_valid_input(keyboard_key);
-        if (!is_valid)
+        int key = keypad_key(e);
+        if (key < 0 || !held[key])
             return;
-        // Convert keyboard key to keypad key
-        //char mapped_keypad_key = this.keymap.get(keyboard_key);
-        // Convert keypad key to keypad index
-        //int keypad_index = this.keypad_map.get(mapped_keypad_key);
-        //logger.debug("Key released: '"+keyboard_key+"' -> '"+mapped_keypad_key+"', keypad index: "+keypad_index);
-        int keypad_index = this.keyboard_to_keypad_index_map.get(keyboard_key);
-        this.keypad[keypad_index] = false;
+        held[key] = false;
+        if (!queue.offer(key, System.nanoTime())) {
+            // Applied by poll once the queue is drained, after the events of the key queued before it.
+            int releases;
+            do {
+                releases = pending_releases.get();
+            } while (!pending_releases.compareAndSet(releases, releases | 1 << key));
+        }
+        wake_up();
     }
 
-    public boolean is_valid_input(char keycode) {
-        for (char c : allowed_keys)
-            if (keycode == c)
-                return true;
-        return false;
+    private boolean clear_pending_release(int key) {
+        int releases;
+        do {
+            releases = pending_releases.get();
+            if ((releases & (1 << key)) == 0)
+                return false;
+        } while (!pending_releases.compareAndSet(releases, releases & ~(1 << key)));
+        return true;
+    }
+
+    private int keypad_key(KeyEvent e) {
+        int key_code = e.getKeyCode();
+        return key_code >= 0 && key_code < KEY_CODES ? key_map[key_code] : -1;
+    }
+
+    /**
+     * @return False if the queue is full, the event is dropped.
+     */
+    private boolean enqueue(int event) {
+        if (!queue.offer(event, System.nanoTime())) {
+            dropped_events++;
+            logger.warn("Key event queue full, event dropped");
+            return false;
+        }
+        wake_up();
+        return true;
+    }
+
+    private void wake_up() {
+        Thread thread = waiter;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Applies the queued key events to the keypad. Called by the emulation thread, between frames.
+     * @return The keys that changed, bit N is key N.
+     */
+    public int poll(boolean[] keypad) {
+        int changed = 0;
+        long now = System.nanoTime();
+        int event;
+        while ((event = queue.peek()) >= 0) {
+            int key = event & 0xF;
+            // A key changes at most once per frame, so a tap shorter than a frame is still seen.
+            // Its release, and the events after it, wait for the next frame.
+            if ((changed & (1 << key)) != 0)
+                break;
+
+            boolean pressed = (event & PRESSED) != 0;
+            if (keypad[key] != pressed) {
+                keypad[key] = pressed;
+                changed |= 1 << key;
+            }
+            long latency = now - queue.remove();
+            latency_sum_nanos += latency;
+            latency_max_nanos = Math.max(latency_max_nanos, latency);
+            applied_events++;
+        }
+
+        // Releases that didn't fit came after every event still queued then, apply them once the queue is drained.
+        // A key that already changed in this frame keeps its release for the next one.
+        if (pending_releases.get() != 0 && queue.is_empty()) {
+            int releases;
+            do {
+                releases = pending_releases.get();
+            } while (!pending_releases.compareAndSet(releases, releases & changed));
+            releases &= ~changed;
+            while (releases != 0) {
+                int key = Integer.numberOfTrailingZeros(releases);
+                releases &= releases - 1;
+                if (keypad[key]) {
+                    keypad[key] = false;
+                    changed |= 1 << key;
+                }
+                applied_events++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Parks the calling thread until the next key event, or until the timeout.
+     * Used by the Scheduler while the CPU waits for a key, instead of spinning.
+     */
+    public void await_event(long timeout_nanos) {
+        long deadline = System.nanoTime() + timeout_nanos;
+        waiter = Thread.currentThread();
+        try {
+            long remaining;
+            // An event queued before parking is seen by the loop condition.
+            while (queue.is_empty() && pending_releases.get() == 0 && (remaining = deadline - System.nanoTime()) > 0)
+                LockSupport.parkNanos(this, remaining);
+        } finally {
+            waiter = null;
+        }
+    }
+
+    public long get_applied_events() {
+        return applied_events;
+    }
+
+    public long get_dropped_events() {
+        return dropped_events;
+    }
+
+    /**
+     * Average time from a key event on the EDT to the frame that applied it.
+     */
+    public double get_average_latency_micros() {
+        return applied_events == 0 ? 0 : latency_sum_nanos / 1e3 / applied_events;
     }
 
-    public boolean[] get_keypad() {
-        return keypad;
+    public double get_max_latency_micros() {
+        return latency_max_nanos / 1e3;
     }
 }
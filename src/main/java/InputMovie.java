@@ -0,0 +1,148 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Recording of keypad input, for deterministic replays.
+ * Each key press and release is stamped with the frame it was latched on. Keys only change between frames and
+ * every frame runs a fixed budget of instructions, so the frame number also fixes the cycle: frame x instructions per frame.
+ * Replaying a movie with the same ROM, seed and instructions per frame gives the same run, instruction by instruction.
+ *
+ * File format (big endian): magic "C8MV" (4), version (4), seed (8), instructions per frame (4), length in frames (8),
+ * event count (4), then each event: frame (4), key (1), pressed (1).
+ */
+public class InputMovie {
+    private static final int MAGIC = 0x43384D56;
+    public static final int VERSION = 1;
+
+    private final long seed;
+    private final int instructions_per_frame;
+    private long length;
+
+    // Events in frame order.
+    private int[] frames = new int[256];
+    private byte[] keys = new byte[256];
+    private boolean[] pressed = new boolean[256];
+    private int count;
+
+    public InputMovie(long seed, int instructions_per_frame) {
+        this.seed = seed;
+        this.instructions_per_frame = instructions_per_frame;
+    }
+
+    /**
+     * Appends a key transition. Frames must not go backwards.
+     * @param frame 0 to Integer.MAX_VALUE, frames are stored in 4 bytes. More than a year of frames at 60 Hz.
+     */
+    public synchronized void record(long frame, int key, boolean is_pressed) {
+        if (frame < 0 || frame > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Input movie frame out of range: " + frame);
+        if (count > 0 && frame < frames[count - 1])
+            throw new IllegalArgumentException("Input movie events must be in frame order, got frame " + frame + " after " + frames[count - 1]);
+        if (count == frames.length) {
+            frames = Arrays.copyOf(frames, count * 2);
+            keys = Arrays.copyOf(keys, count * 2);
+            pressed = Arrays.copyOf(pressed, count * 2);
+        }
+        frames[count] = (int) frame;
+        keys[count] = (byte) key;
+        pressed[count] = is_pressed;
+        count++;
+        length = Math.max(length, frame + 1);
+    }
+
+    /**
+     * Sets the number of frames the movie covers, replays run that many frames.
+     */
+    public synchronized void set_length(long length) {
+        this.length = Math.max(this.length, length);
+    }
+
+    /**
+     * Returns a new cursor replaying the movie from its start. A movie can have many players, e.g. one per batch job.
+     */
+    public Player player() {
+        return new Player();
+    }
+
+    /**
+     * Feeds the events of a movie to a CPU, frame by frame.
+     */
+    public class Player {
+        private int next;
+
+        /**
+         * Applies the events of the frame (and of any earlier frame not applied yet) to the cpu's keypad.
+         * @return The keys that changed, bit N is key N.
+         */
+        public int apply(long frame, CPU cpu) {
+            int changed = 0;
+            while (next < count && frames[next] <= frame) {
+                cpu.set_key(keys[next], pressed[next]);
+                changed |= 1 << keys[next];
+                next++;
+            }
+            return changed;
+        }
+    }
+
+    public synchronized void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeInt(instructions_per_frame);
+            out.writeLong(length);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(frames[i]);
+                out.writeByte(keys[i]);
+                out.writeBoolean(pressed[i]);
+            }
+        }
+    }
+
+    public static InputMovie read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not an input movie: " + file);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported input movie version " + version + ", expected " + VERSION + ": " + file);
+
+            InputMovie movie = new InputMovie(in.readLong(), in.readInt());
+            long length = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int frame = in.readInt();
+                int key = in.readByte();
+                if (key < 0 || key > 0xF)
+                    throw new IOException("Invalid key " + key + " in input movie: " + file);
+                movie.record(frame, key, in.readBoolean());
+            }
+            movie.set_length(length);
+            return movie;
+        }
+    }
+
+    public long get_seed() {
+        return seed;
+    }
+
+    public int get_instructions_per_frame() {
+        return instructions_per_frame;
+    }
+
+    public long get_length() {
+        return length;
+    }
+
+    public int get_event_count() {
+        return count;
+    }
+}
@@ -1,11 +1,19 @@
+/**
+ * A decoded instruction, for printing. Built by the Disassembler, never on the CPU hot path.
+ */
 public class Instruction {
     public enum Instructions {
+        SYS,
         CLS,
         RET,
         JP,
         CALL,
         RTS,
-        SE, SNE, ADD, OR, AND, XOR, SUB, SHR, SUBN, SHL, RND, DRW, SKP, SKNP, LD
+        SE, SNE, ADD, OR, AND, XOR, SUB, SHR, SUBN, SHL, RND, DRW, SKP, SKNP, LD,
+        // SUPER-CHIP
+        SCD, SCR, SCL, EXIT, LOW, HIGH,
+        // XO-CHIP
+        SCU, SAVE, LOAD, PLANE
     }
 
     public enum Operand {
@@ -30,6 +38,9 @@ public class Instruction {
         K, // Key pressed by user
         ST, // Sound timer value
         F, // Font
+        HF, // Large font (SUPER-CHIP)
+        R, // RPL user flags (SUPER-CHIP)
+        NEXT, // The 16 bit word following the instruction (XO-CHIP)
         B, // Binary coded decimal
         I_ARRAY; // Represents registers V0 to Vx starting at memory location I
 
@@ -83,6 +94,10 @@ public class Instruction {
         this.no_value = true;
     }
 
+    public Instructions get_instruction() {
+        return instruction;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single producer, single consumer queue of key events, with the time each event was offered.
+ * The producer (the Swing EDT) never blocks: when the queue is full the event is rejected.
+ * Events and times live in preallocated arrays, so passing an event allocates nothing.
+ */
+public class KeyEventQueue {
+    private final int[] events;
+    private final long[] times;
+    private final int mask;
+
+    // Next index to write, only written by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    // Next index to read, only written by the consumer.
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity Maximum number of queued events, must be a power of two.
+     */
+    public KeyEventQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Queue capacity must be a power of two, got: " + capacity);
+        this.events = new int[capacity];
+        this.times = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds an event. Producer thread only.
+     * @return False if the queue is full, the event is not added.
+     */
+    public boolean offer(int event, long time_nanos) {
+        long t = tail.get();
+        if (t - head.getAcquire() == events.length)
+            return false;
+        events[(int) t & mask] = event;
+        times[(int) t & mask] = time_nanos;
+        // Release: the consumer that sees the new tail sees the event.
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    /**
+     * Returns the oldest event without removing it. Consumer thread only.
+     * @return The event, or -1 if the queue is empty.
+     */
+    public int peek() {
+        long h = head.get();
+        if (h == tail.getAcquire())
+            return -1;
+        return events[(int) h & mask];
+    }
+
+    /**
+     * Removes the oldest event. Consumer thread only.
+     * @return The time of the event, as given to offer.
+     */
+    public long remove() {
+        long h = head.get();
+        long time = times[(int) h & mask];
+        // Release: the producer that sees the new head can reuse the slot.
+        head.setRelease(h + 1);
+        return time;
+    }
+
+    public boolean is_empty() {
+        return head.getAcquire() == tail.getAcquire();
+    }
+}
@@ -1,7 +1,10 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.sound.sampled.LineUnavailableException;
 import java.io.*;
+import java.nio.file.Path;
 import java.util.HexFormat;
 
 public class Main {
@@ -17,15 +20,21 @@ public class Main {
     public static void main(String[] args) throws InterruptedException, IOException {
         Logger logger = LoggerFactory.getLogger(Main.class);
 
-        // Read from ROM file
+        // Read from ROM file, or classpath resource
         //String ch8Program = "test_rom/test_opcode.ch8";
         //String ch8Program = "other_roms/IBM Logo.ch8";
         String ch8Program = "other_roms/pong2.ch8";
         //String ch8Program = "other_roms/tetris.ch8";
         //String ch8Program = "other_roms/invaders.ch8";
-        InputStream inputStream = Main.class.getClassLoader().getResourceAsStream(ch8Program);
-        byte[] program = new byte[4096];
-        int bytes_read = inputStream.read(program);
+        String record_path = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--record"))
+                record_path = args[++i];
+            else
+                ch8Program = args[i];
+        }
+        byte[] program = Headless.load_rom(ch8Program);
+        int bytes_read = program.length;
 
         // Custom programs
 
@@ -64,13 +73,45 @@ public class Main {
 
         Display display = new Display();
         Input input = new Input();
-        Window window = new Window(display, input);
+        FrameExchange frames = new FrameExchange();
+        Window window = new Window(frames, input);
+
+        CPU cpu = new CPU(program, bytes_read, display, input);
+        FramePresenter presenter = new FramePresenter(display, frames, window);
+
+        // -Dchip8.metrics=true: counters in JConsole / VisualVM, under chip8:type=Metrics.
+        if (Metrics.ENABLED) {
+            window.set_metrics(cpu.get_metrics());
+            try {
+                cpu.get_metrics().register();
+            } catch (JMException e) {
+                logger.warn("Can't register metrics MBean: " + e.getMessage());
+            }
+        }
 
-        CPU cpu = new CPU(program, bytes_read, display, window, input);
+        Scheduler scheduler = new Scheduler(cpu, presenter, Scheduler.DEFAULT_INSTRUCTIONS_PER_FRAME);
+        try {
+            scheduler.set_beeper(new Beeper(AudioLine.open()));
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            // No sound card (or no free line): run silent.
+            logger.warn("No audio output, running without sound: " + e.getMessage());
+        }
 
-        while (true) {
-            Thread.sleep(1);
-            cpu.tick();
+        // --record FILE: save the key presses of the session as an input movie, replay it with Headless --replay FILE.
+        if (record_path != null) {
+            Path movie_path = Path.of(record_path);
+            InputMovie recording = new InputMovie(CPU.DEFAULT_SEED, scheduler.get_instructions_per_frame());
+            scheduler.set_recording(recording);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    recording.set_length(scheduler.get_frames());
+                    recording.write(movie_path);
+                } catch (IOException e) {
+                    logger.error("Can't write input movie", e);
+                }
+            }));
         }
+
+        scheduler.run();
     }
 }
\ No newline at end of file
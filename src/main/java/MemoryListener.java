@@ -0,0 +1,17 @@
+/**
+ * Notified when RAM changes: written by the program (Fx33, Fx55), or replaced as a whole by a state restore.
+ * Execution engines that cache code decoded from RAM use it to drop stale code.
+ */
+public interface MemoryListener {
+    /**
+     * @param address First address written.
+     * @param length Number of bytes written.
+     */
+    void on_write(int address, int length);
+
+    /**
+     * The whole RAM was replaced (state restore, rewind). Not self-modifying code: the cached code is dropped,
+     * without counting against the addresses it was compiled from.
+     */
+    void on_reset();
+}
@@ -0,0 +1,277 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a running emulator, exposed over JMX (see MetricsMXBean).
+ * Enabled with -Dchip8.metrics=true. When disabled no Metrics exists, and every recording call site is behind
+ * the constant ENABLED, so the JIT removes it: disabled metrics cost nothing.
+ *
+ * The emulation thread records into plain int counters it alone touches, and publishes them once per frame into
+ * atomic totals, with ordered (lazy) writes. JMX threads only read the totals. Paints happen on the EDT, they are
+ * counted in a LongAdder.
+ */
+public class Metrics implements MetricsMXBean {
+    public static final boolean ENABLED = Boolean.getBoolean("chip8.metrics");
+
+    private static final long[] BUCKETS_MICROS = {50, 100, 250, 500, 1000, 2000, 4000, 8000, 12000, 16000, 16500,
+            16833, 17500, 20000, 33333, 50000, Long.MAX_VALUE};
+
+    // Instruction family of each Decoder handler id, null for invalid opcodes.
+    private static final Instruction.Instructions[] FAMILIES = families();
+    private static final int FAMILY_COUNT = Instruction.Instructions.values().length;
+
+    /**
+     * Owned by the emulation thread, published by end_frame
+     */
+    private final int[] pending_handlers = new int[Decoder.get_handler_count()];
+    private int pending_draws;
+    private int pending_collisions;
+    private long pending_skipped;
+    private long period_start;
+    private long period_instructions;
+    private long last_frame_start;
+
+    /**
+     * Published totals
+     */
+    private final AtomicLongArray family_counts = new AtomicLongArray(FAMILY_COUNT);
+    private final AtomicLongArray frame_times = new AtomicLongArray(BUCKETS_MICROS.length);
+    private final AtomicLongArray frame_intervals = new AtomicLongArray(BUCKETS_MICROS.length);
+    // Instructions, frames, draws, collisions, skipped instructions
+    private final AtomicLongArray totals = new AtomicLongArray(5);
+    private volatile double instructions_per_second;
+
+    private final LongAdder repaint_requests = new LongAdder();
+    private final LongAdder paints = new LongAdder();
+
+    private static final int INSTRUCTIONS = 0;
+    private static final int FRAMES = 1;
+    private static final int DRAWS = 2;
+    private static final int COLLISIONS = 3;
+    private static final int SKIPPED = 4;
+
+    /**
+     * Registers the metrics in the platform MBean server, as "chip8:type=Metrics".
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("chip8:type=Metrics"));
+    }
+
+    /**
+     * Counts an executed instruction. Emulation thread only.
+     * @param handler_id Decoder handler id of the instruction.
+     */
+    public void count(int handler_id) {
+        pending_handlers[handler_id]++;
+    }
+
+    /**
+     * Counts the instructions run of a recompiled block. Emulation thread only.
+     * @param from Index of the first instruction run.
+     * @param to Index after the last instruction run.
+     */
+    public void count(byte[] handler_ids, int from, int to) {
+        for (int i = from; i < to; i++)
+            pending_handlers[handler_ids[i]]++;
+    }
+
+    /**
+     * Counts a DRW. Emulation thread only.
+     */
+    public void drawn(boolean collision) {
+        pending_draws++;
+        if (collision)
+            pending_collisions++;
+    }
+
+    /**
+     * Counts the instructions of idle loop passes skipped instead of executed. Emulation thread only.
+     */
+    public void skipped(int instructions) {
+        pending_skipped += instructions;
+    }
+
+    /**
+     * Counts a real time frame starting, for the frame interval histogram. Emulation thread only.
+     */
+    public void frame_started(long now) {
+        if (last_frame_start != 0)
+            add(frame_intervals, bucket(now - last_frame_start), 1);
+        last_frame_start = now;
+    }
+
+    /**
+     * Publishes the counts of the frame. Emulation thread only.
+     * @param start System.nanoTime() when the frame started.
+     */
+    public void end_frame(long start) {
+        long now = System.nanoTime();
+        add(frame_times, bucket(now - start), 1);
+        add(totals, FRAMES, 1);
+        flush();
+
+        if (period_start == 0) {
+            period_start = now;
+            period_instructions = totals.getPlain(INSTRUCTIONS);
+        } else if (now - period_start >= 1_000_000_000L) {
+            long instructions = totals.getPlain(INSTRUCTIONS);
+            instructions_per_second = (instructions - period_instructions) * 1e9 / (now - period_start);
+            period_start = now;
+            period_instructions = instructions;
+        }
+    }
+
+    /**
+     * Publishes the counts recorded since the last frame. Emulation thread only.
+     */
+    public void flush() {
+        long instructions = 0;
+        for (int handler_id = 0; handler_id < pending_handlers.length; handler_id++) {
+            int count = pending_handlers[handler_id];
+            if (count == 0)
+                continue;
+            pending_handlers[handler_id] = 0;
+            instructions += count;
+            Instruction.Instructions family = FAMILIES[handler_id];
+            if (family != null)
+                add(family_counts, family.ordinal(), count);
+        }
+        add(totals, INSTRUCTIONS, instructions);
+        add(totals, DRAWS, pending_draws);
+        add(totals, COLLISIONS, pending_collisions);
+        add(totals, SKIPPED, pending_skipped);
+        pending_draws = 0;
+        pending_collisions = 0;
+        pending_skipped = 0;
+    }
+
+    /**
+     * Counts a repaint asked to Swing. Called by the emulation thread.
+     */
+    public void repaint_requested() {
+        repaint_requests.increment();
+    }
+
+    /**
+     * Counts a paint. Called by the EDT.
+     */
+    public void painted() {
+        paints.increment();
+    }
+
+    // Single writer: a plain read, then an ordered write, no atomic read-modify-write needed.
+    private static void add(AtomicLongArray array, int index, long value) {
+        if (value != 0)
+            array.lazySet(index, array.getPlain(index) + value);
+    }
+
+    private static int bucket(long nanos) {
+        int index = Arrays.binarySearch(BUCKETS_MICROS, nanos / 1000);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static Instruction.Instructions[] families() {
+        Instruction.Instructions[] families = new Instruction.Instructions[Decoder.get_handler_count()];
+        for (int opcode = 0; opcode <= 0xFFFF; opcode++) {
+            int handler_id = Decoder.get_handler_id(opcode);
+            if (families[handler_id] == null) {
+                Instruction instruction = Disassembler.disassemble(opcode);
+                if (instruction != null)
+                    families[handler_id] = instruction.get_instruction();
+            }
+        }
+        return families;
+    }
+
+    private static long[] to_array(AtomicLongArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = array.get(i);
+        return values;
+    }
+
+    @Override
+    public double getInstructionsPerSecond() {
+        return instructions_per_second;
+    }
+
+    @Override
+    public long getInstructions() {
+        return totals.get(INSTRUCTIONS);
+    }
+
+    @Override
+    public long getFrames() {
+        return totals.get(FRAMES);
+    }
+
+    @Override
+    public long getSkippedInstructions() {
+        return totals.get(SKIPPED);
+    }
+
+    @Override
+    public Map<String, Long> getOpcodeCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Instruction.Instructions family : Instruction.Instructions.values())
+            counts.put(family.name(), family_counts.get(family.ordinal()));
+        return counts;
+    }
+
+    @Override
+    public long[] getFrameTimeHistogram() {
+        return to_array(frame_times);
+    }
+
+    @Override
+    public long[] getFrameIntervalHistogram() {
+        return to_array(frame_intervals);
+    }
+
+    @Override
+    public long[] getHistogramBucketsMicros() {
+        return BUCKETS_MICROS.clone();
+    }
+
+    @Override
+    public long getDraws() {
+        return totals.get(DRAWS);
+    }
+
+    @Override
+    public long getCollisions() {
+        return totals.get(COLLISIONS);
+    }
+
+    @Override
+    public long getRepaintRequests() {
+        return repaint_requests.sum();
+    }
+
+    @Override
+    public long getPaints() {
+        return paints.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("instructions=%d skipped=%d frames=%d draws=%d collisions=%d repaints=%d paints=%d%n",
+                getInstructions(), getSkippedInstructions(), getFrames(), getDraws(), getCollisions(), getRepaintRequests(), getPaints()));
+        getOpcodeCounts().forEach((family, count) -> {
+            if (count != 0)
+                sb.append(String.format("  %-5s %d%n", family, count));
+        });
+        long[] times = getFrameTimeHistogram();
+        for (int i = 0; i < times.length; i++)
+            if (times[i] != 0)
+                sb.append(String.format("  frame <= %s us: %d%n", i == times.length - 1 ? "inf" : BUCKETS_MICROS[i], times[i]));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.Map;
+
+/**
+ * Management interface of Metrics, seen in JConsole or VisualVM under "chip8:type=Metrics".
+ * Method names follow the JMX getter convention, which derives the attribute names from them.
+ */
+public interface MetricsMXBean {
+    /**
+     * Instructions per second, measured over the last second of emulation.
+     */
+    double getInstructionsPerSecond();
+
+    long getInstructions();
+
+    /**
+     * Instructions of idle loops (polling the delay timer or the keys) skipped instead of executed.
+     * Not part of getInstructions.
+     */
+    long getSkippedInstructions();
+
+    long getFrames();
+
+    /**
+     * Instructions executed per family (LD, DRW, SE...), as named by the Disassembler.
+     */
+    Map<String, Long> getOpcodeCounts();
+
+    /**
+     * Time to run each frame (instructions, timers, present), counts per bucket. See getHistogramBucketsMicros.
+     */
+    long[] getFrameTimeHistogram();
+
+    /**
+     * Time between the starts of consecutive real time frames (16667us at 60 Hz), counts per bucket.
+     */
+    long[] getFrameIntervalHistogram();
+
+    /**
+     * Upper bound of each histogram bucket, in microseconds. The last bucket has no bound.
+     */
+    long[] getHistogramBucketsMicros();
+
+    /**
+     * DRW instructions executed.
+     */
+    long getDraws();
+
+    /**
+     * DRW instructions that erased a lit pixel.
+     */
+    long getCollisions();
+
+    /**
+     * Repaints asked to Swing, one per presented frame.
+     */
+    long getRepaintRequests();
+
+    /**
+     * Paints Swing actually did. Fewer than requests when Swing coalesced them.
+     */
+    long getPaints();
+}
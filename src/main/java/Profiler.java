@@ -0,0 +1,182 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Profiles the guest program: which addresses execute most, and in which CHIP-8 subroutines the time goes.
+ * Every executed instruction increments the counter of its address. Every interval instructions, the guest call stack
+ * is rebuilt from the CPU's stack (the return addresses pushed by 2nnn, popped by 00EE) and counted as one sample in a
+ * call tree. A frame is named after the subroutine entry, the target of the 2nnn found right before the return address.
+ *
+ * Recording is an array increment, plus a walk of at most 16 return addresses per sample, without allocating once the
+ * call tree holds the program's call paths, so it can stay on for full speed headless runs.
+ * Attach it with CPU.set_profiler. Like tracing, it runs instruction by instruction: the Recompiler interprets while a
+ * profiler is attached.
+ *
+ * Output:
+ * write_collapsed: one line per call path, "main;sub_02A4;sub_0310 42", the input of flamegraph.pl and speedscope.
+ * write_hotspots: the most executed addresses, with their share of the instructions and their disassembly.
+ */
+public class Profiler {
+    public static final int DEFAULT_INTERVAL = 64;
+
+    private static final int ROOT = 0;
+
+    private final CPU cpu;
+    private final int interval;
+    private int countdown;
+
+    // Instructions executed, by address
+    private final long[] counts = new long[CPU.MEMORY_SIZE];
+    private long instructions;
+    private long samples;
+
+    /**
+     * Call tree, one node per call path. Node 0 is the root, the code outside any subroutine.
+     * Children of a node are a linked list, a node has only a few.
+     */
+    private int[] node_address = new int[256];
+    private int[] node_parent = new int[256];
+    private int[] node_first_child = new int[256];
+    private int[] node_next_sibling = new int[256];
+    private long[] node_samples = new long[256];
+    private int node_count = 1;
+
+    /**
+     * @param interval Instructions between two call stack samples.
+     */
+    public Profiler(CPU cpu, int interval) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("Sample interval must be positive, got: " + interval);
+        this.cpu = cpu;
+        this.interval = interval;
+        this.countdown = interval;
+        node_first_child[ROOT] = -1;
+        node_next_sibling[ROOT] = -1;
+        node_parent[ROOT] = -1;
+    }
+
+    /**
+     * Records the instruction about to execute at pc. Called by the CPU for every instruction.
+     */
+    void record(int pc) {
+        counts[pc & (CPU.MEMORY_SIZE - 1)]++;
+        instructions++;
+        if (--countdown == 0) {
+            countdown = interval;
+            sample();
+        }
+    }
+
+    private void sample() {
+        int node = ROOT;
+        // A corrupt stack pointer (stack overflow, underflow) is clamped, the CPU will fail on its own.
+        int depth = Math.max(0, Math.min(cpu.get_sp(), 16));
+        for (int i = 0; i < depth; i++) {
+            int call = (cpu.get_return_address(i) - 2) & (CPU.MEMORY_SIZE - 1);
+            int opcode = cpu.read_opcode(Math.min(call, CPU.MEMORY_SIZE - 2));
+            // Not a CALL anymore (self-modifying code, restored state): the call site itself names the frame.
+            int entry = (opcode & 0xF000) == 0x2000 ? opcode & 0x0FFF : call;
+            node = child(node, entry);
+        }
+        node_samples[node]++;
+        samples++;
+    }
+
+    private int child(int parent, int address) {
+        for (int node = node_first_child[parent]; node >= 0; node = node_next_sibling[node])
+            if (node_address[node] == address)
+                return node;
+
+        if (node_count == node_address.length) {
+            int capacity = node_count * 2;
+            node_address = Arrays.copyOf(node_address, capacity);
+            node_parent = Arrays.copyOf(node_parent, capacity);
+            node_first_child = Arrays.copyOf(node_first_child, capacity);
+            node_next_sibling = Arrays.copyOf(node_next_sibling, capacity);
+            node_samples = Arrays.copyOf(node_samples, capacity);
+        }
+        int node = node_count++;
+        node_address[node] = address;
+        node_parent[node] = parent;
+        node_first_child[node] = -1;
+        node_next_sibling[node] = node_first_child[parent];
+        node_first_child[parent] = node;
+        return node;
+    }
+
+    /**
+     * Writes the sampled call stacks in the collapsed format: frames from the root, separated by ';', then the number
+     * of samples. Only call paths with samples of their own are written.
+     */
+    public void write_collapsed(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            StringBuilder line = new StringBuilder();
+            for (int node = 0; node < node_count; node++) {
+                if (node_samples[node] == 0)
+                    continue;
+                line.setLength(0);
+                append_path(line, node);
+                line.append(' ').append(node_samples[node]);
+                out.write(line.toString());
+                out.newLine();
+            }
+        }
+    }
+
+    private void append_path(StringBuilder line, int node) {
+        if (node == ROOT) {
+            line.append("main");
+            return;
+        }
+        append_path(line, node_parent[node]);
+        line.append(String.format(";sub_%04X", node_address[node]));
+    }
+
+    /**
+     * Writes the most executed addresses, most executed first: count, share of all instructions, disassembly.
+     * @param limit Maximum number of addresses.
+     */
+    public void write_hotspots(Path file, int limit) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write(String.format("%d instructions, %d stack samples every %d instructions%n", instructions, samples, interval));
+            out.write(String.format("%12s %7s  %s%n", "count", "share", "instruction"));
+            for (int address : get_hotspots(limit)) {
+                out.write(String.format("%12d %6.2f%%  %s%n", counts[address], 100.0 * counts[address] / instructions,
+                        Disassembler.format(address, cpu.read_opcode(Math.min(address, CPU.MEMORY_SIZE - 2)))));
+            }
+        }
+    }
+
+    /**
+     * Returns the most executed addresses, most executed first.
+     * @param limit Maximum number of addresses.
+     */
+    public List<Integer> get_hotspots(int limit) {
+        List<Integer> addresses = new ArrayList<>();
+        for (int address = 0; address < counts.length; address++)
+            if (counts[address] != 0)
+                addresses.add(address);
+        addresses.sort((a, b) -> Long.compare(counts[b], counts[a]));
+        return addresses.subList(0, Math.min(limit, addresses.size()));
+    }
+
+    /**
+     * Instructions executed at the address.
+     */
+    public long get_count(int address) {
+        return counts[address];
+    }
+
+    public long get_instructions() {
+        return instructions;
+    }
+
+    public long get_samples() {
+        return samples;
+    }
+}
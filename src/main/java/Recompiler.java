@@ -0,0 +1,500 @@
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dynamic recompiler.
+ * Translates basic blocks of CHIP-8 code into JVM classes (generated with ASM, defined as hidden classes),
+ * and caches them by the address of their first instruction. A block is a straight run of instructions,
+ * ending at the first instruction that changes the control flow (00EE, 1nnn, 2nnn, Bnnn, skips, Fx0A)
+ * or writes to RAM (Fx33, Fx55), or at the start of another block: blocks never overlap.
+ * The register, I and ALU instructions (6xkk, 7xkk, 8xyn, Annn) are generated inline, as loads and stores of the registers.
+ * The other instructions call their handler through a constant of the block class, so the JIT inlines it,
+ * instead of the interpreter's single megamorphic dispatch. There is no fetch or decode at all.
+ *
+ * RAM writes invalidate the blocks they overlap, so self-modifying ROMs stay correct.
+ * A block that keeps being invalidated is interpreted instead of being recompiled over and over.
+ *
+ * A block can be entered at any of its instructions (a jump into its middle), and stopped before any of them,
+ * so budgets are exact: the last block of a frame runs only the instructions left in the budget.
+ * So the emulated machine is identical to the interpreter's, frame by frame.
+ * Blocks have no per-instruction hook, so while the CPU is traced (see TraceRecorder) everything is interpreted.
+ */
+public final class Recompiler implements ExecutionEngine, MemoryListener {
+    /**
+     * A recompiled basic block.
+     */
+    public interface Block {
+        /**
+         * Runs the instructions of the block from entry to exit (excluded), and leaves PC at the next instruction.
+         * @param entry Index of the first instruction to run.
+         * @param exit Index of the instruction to stop at, the block's length to run it to the end. Greater than entry.
+         */
+        void run(CPU cpu, int entry, int exit);
+    }
+
+    private static final int MEMORY_SIZE = CPU.MEMORY_SIZE;
+    private static final int MAX_BLOCK_LENGTH = 64;
+    // A block invalidated more than this many times is self-modifying code, don't recompile it again.
+    static final int MAX_RECOMPILES = 8;
+
+    private static final String CPU_NAME = Type.getInternalName(CPU.class);
+    private static final String HANDLER_NAME = Type.getInternalName(Decoder.Handler.class);
+    private static final String BLOCK_NAME = Type.getInternalName(Block.class);
+    private static final String HANDLER_DESCRIPTOR = Type.getDescriptor(Decoder.Handler.class);
+    private static final String CPU_DESCRIPTOR = Type.getDescriptor(CPU.class);
+
+    // Locals of the generated run method
+    private static final int CPU_LOCAL = 1;
+    private static final int ENTRY_LOCAL = 2;
+    private static final int EXIT_LOCAL = 3;
+    private static final int REGISTERS_LOCAL = 4;
+    private static final int SUM_LOCAL = 5;
+
+    private final CPU cpu;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    // Indexed by the address of the block's first instruction
+    private final Block[] blocks = new Block[MEMORY_SIZE];
+    private final int[] block_lengths = new int[MEMORY_SIZE];   // In instructions
+    private final byte[] recompiles = new byte[MEMORY_SIZE];
+    // Decoder handler id of each instruction of the block, for Metrics. Only kept when Metrics.ENABLED.
+    private final byte[][] block_handlers = Metrics.ENABLED ? new byte[MEMORY_SIZE][] : null;
+    // Address of the block covering each address, plus one. 0 if no block covers it.
+    private final int[] owners = new int[MEMORY_SIZE];
+
+    /**
+     * Statistics
+     */
+    private long compiled_blocks;
+    private long block_runs;
+    private long interpreted_instructions;
+    private long invalidations;
+
+    // Final class: it registers itself as the cpu's listener while constructed, no subclass can be half built.
+    public Recompiler(CPU cpu) {
+        this.cpu = cpu;
+        cpu.set_memory_listener(this);
+    }
+
+    @Override
+    public int execute(int budget) {
+        int executed = 0;
+        while (executed < budget) {
+            // Fx0A ends blocks, so a wait can only start between blocks.
+            if (cpu.is_waiting_for_key() && !cpu.resume_on_key())
+                break;
+
+            int pc = cpu.get_pc();
+            int start = -1;
+            if (!cpu.is_observed()) {
+                if (owners[pc] == 0)
+                    compile(pc);
+                int owner = owners[pc] - 1;
+                // Entering a block between two of its instructions would run another program, that's interpreted.
+                if (owner >= 0 && ((pc - owner) & 1) == 0)
+                    start = owner;
+            }
+
+            if (start < 0) {
+                // Not compilable (e.g. an opcode wrapping around the end of memory).
+                cpu.tick();
+                executed++;
+                interpreted_instructions++;
+                if (cpu.is_idle())
+                    executed += cpu.skip_idle(budget - executed);
+                continue;
+            }
+
+            int entry = (pc - start) >> 1;
+            int exit = Math.min(block_lengths[start], entry + budget - executed);
+            blocks[start].run(cpu, entry, exit);
+            if (Metrics.ENABLED)
+                cpu.get_metrics().count(block_handlers[start], entry, exit);
+            executed += exit - entry;
+            block_runs++;
+            // JP ends blocks, an idle loop's jump is always the last instruction of a block.
+            if (cpu.is_idle())
+                executed += cpu.skip_idle(budget - executed);
+        }
+        return executed;
+    }
+
+    /**
+     * Compiles the block starting at the given address and caches it.
+     * Nothing is compiled if it shouldn't be, e.g. a block invalidated too often.
+     */
+    private void compile(int start) {
+        if (recompiles[start] > MAX_RECOMPILES)
+            return;
+
+        int length = 0;
+        boolean terminated = false;
+        for (int address = start; length < MAX_BLOCK_LENGTH && address + 1 < MEMORY_SIZE; address += 2) {
+            // Stop where another block starts (or an instruction straddling one), that block is entered from here.
+            if (owners[address] != 0 || owners[address + 1] != 0)
+                break;
+            length++;
+            if (ends_block(cpu.read_opcode(address))) {
+                terminated = true;
+                break;
+            }
+        }
+        if (length == 0)
+            return;
+
+        int[] opcodes = new int[length];
+        for (int i = 0; i < length; i++)
+            opcodes[i] = cpu.read_opcode(start + 2 * i);
+        List<Decoder.Handler> handlers = new ArrayList<>();
+        blocks[start] = define(generate(start, opcodes, terminated, handlers), handlers);
+        block_lengths[start] = length;
+        if (Metrics.ENABLED) {
+            byte[] handler_ids = new byte[length];
+            for (int i = 0; i < length; i++)
+                handler_ids[i] = (byte) Decoder.get_handler_id(opcodes[i]);
+            block_handlers[start] = handler_ids;
+        }
+        Arrays.fill(owners, start, start + 2 * length, start + 1);
+        compiled_blocks++;
+    }
+
+    private static boolean ends_block(int opcode) {
+        return switch (opcode >> 12) {
+            case 0x0 -> opcode == 0x00EE || opcode == 0x00FD;
+            case 0x1, 0x2, 0x3, 0x4, 0x5, 0x9, 0xB, 0xE -> true;
+            case 0xF -> {
+                // F000 (XO-CHIP) reads the next word and skips it, like a jump.
+                int kk = opcode & 0xFF;
+                yield opcode == 0xF000 || kk == 0x0A || kk == 0x33 || kk == 0x55;
+            }
+            default -> false;
+        };
+    }
+
+    /**
+     * Generates the class of a block:
+     * <pre>
+     * final class RecompiledBlock implements Recompiler.Block {
+     *     static final Decoder.Handler h1 = handler of op1;   // One per instruction not generated inline
+     *     ...
+     *     public void run(CPU cpu, int entry, int exit) {
+     *         byte[] registers = cpu.get_registers();
+     *         switch (entry) {
+     *             case 0:
+     *                 registers[x] += kk;                     // e.g. 7xkk, inline
+     *             case 1:
+     *                 if (exit == 1) break;
+     *                 h1.execute(cpu, op1);
+     *             ...
+     *             case last:
+     *                 if (exit == last) break;
+     *                 cpu.set_pc(address of last + 2);
+     *                 h_last.execute(cpu, last);
+     *                 return;
+     *         }
+     *         cpu.set_pc(start + 2 * exit);
+     *     }
+     * }
+     * </pre>
+     * Only the last instruction can read PC, so PC is set once, right before it.
+     * @param handlers Receives the handlers of the instructions not generated inline, the class data of the block.
+     */
+    private static byte[] generate(int start, int[] opcodes, boolean terminated, List<Decoder.Handler> handlers) {
+        int length = opcodes.length;
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V19, Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, "RecompiledBlock", null,
+                "java/lang/Object", new String[]{BLOCK_NAME});
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor run = cw.visitMethod(Opcodes.ACC_PUBLIC, "run", "(" + CPU_DESCRIPTOR + "II)V", null, null);
+        run.visitCode();
+        run.visitVarInsn(Opcodes.ALOAD, CPU_LOCAL);
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, CPU_NAME, "get_registers", "()[B", false);
+        run.visitVarInsn(Opcodes.ASTORE, REGISTERS_LOCAL);
+
+        Label[] instructions = new Label[length];
+        for (int i = 0; i < length; i++)
+            instructions[i] = new Label();
+        Label stop = new Label();
+        run.visitVarInsn(Opcodes.ILOAD, ENTRY_LOCAL);
+        run.visitTableSwitchInsn(0, length - 1, instructions[0], instructions);
+
+        for (int i = 0; i < length; i++) {
+            int address = start + 2 * i;
+            int opcode = opcodes[i];
+            run.visitLabel(instructions[i]);
+            if (i > 0) {
+                run.visitVarInsn(Opcodes.ILOAD, EXIT_LOCAL);
+                push(run, i);
+                run.visitJumpInsn(Opcodes.IF_ICMPEQ, stop);
+            }
+            if (terminated && i == length - 1)
+                emit_set_pc(run, address + 2);
+            if (!emit_inline(run, opcode)) {
+                String field = "h" + handlers.size();
+                handlers.add(Decoder.get(opcode));
+                cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, field, HANDLER_DESCRIPTOR, null, null).visitEnd();
+                run.visitFieldInsn(Opcodes.GETSTATIC, "RecompiledBlock", field, HANDLER_DESCRIPTOR);
+                run.visitVarInsn(Opcodes.ALOAD, CPU_LOCAL);
+                push(run, opcode);
+                run.visitMethodInsn(Opcodes.INVOKEINTERFACE, HANDLER_NAME, "execute", "(" + CPU_DESCRIPTOR + "I)V", true);
+            }
+        }
+        if (!terminated)
+            emit_set_pc(run, start + 2 * length);
+        run.visitInsn(Opcodes.RETURN);
+
+        // Stopped before the exit instruction: PC is at it.
+        run.visitLabel(stop);
+        run.visitVarInsn(Opcodes.ALOAD, CPU_LOCAL);
+        run.visitVarInsn(Opcodes.ILOAD, EXIT_LOCAL);
+        run.visitInsn(Opcodes.ICONST_1);
+        run.visitInsn(Opcodes.ISHL);
+        push(run, start);
+        run.visitInsn(Opcodes.IADD);
+        run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, CPU_NAME, "set_pc", "(I)V", false);
+        run.visitInsn(Opcodes.RETURN);
+        run.visitMaxs(0, 0);
+        run.visitEnd();
+
+        // The handlers are constants: the JIT inlines the op_ method behind each of them.
+        MethodVisitor clinit = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        for (int i = 0; i < handlers.size(); i++) {
+            clinit.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/invoke/MethodHandles", "lookup",
+                    "()Ljava/lang/invoke/MethodHandles$Lookup;", false);
+            clinit.visitLdcInsn(ConstantDescs.DEFAULT_NAME);
+            clinit.visitLdcInsn(Type.getType(Decoder.Handler.class));
+            push(clinit, i);
+            clinit.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/invoke/MethodHandles", "classDataAt",
+                    "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;", false);
+            clinit.visitTypeInsn(Opcodes.CHECKCAST, HANDLER_NAME);
+            clinit.visitFieldInsn(Opcodes.PUTSTATIC, "RecompiledBlock", "h" + i, HANDLER_DESCRIPTOR);
+        }
+        clinit.visitInsn(Opcodes.RETURN);
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates an instruction as loads and stores of the registers, with the exact results of its CPU handler.
+     * @return False if the instruction isn't generated inline, its handler must be called.
+     */
+    private static boolean emit_inline(MethodVisitor mv, int opcode) {
+        int x = (opcode >> 8) & 0xF;
+        int y = (opcode >> 4) & 0xF;
+        int kk = (byte) opcode;
+        switch (opcode >> 12) {
+            case 0x6 -> {
+                // registers[x] = kk
+                store_register(mv, x);
+                push(mv, kk);
+                mv.visitInsn(Opcodes.BASTORE);
+            }
+            case 0x7 -> {
+                // registers[x] += kk
+                store_register(mv, x);
+                load_register(mv, x);
+                push(mv, kk);
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitInsn(Opcodes.BASTORE);
+            }
+            case 0x8 -> {
+                switch (opcode & 0xF) {
+                    case 0x0 -> {
+                        store_register(mv, x);
+                        load_register(mv, y);
+                        mv.visitInsn(Opcodes.BASTORE);
+                    }
+                    case 0x1, 0x2, 0x3 -> {
+                        store_register(mv, x);
+                        load_register(mv, x);
+                        load_register(mv, y);
+                        mv.visitInsn((opcode & 0xF) == 0x1 ? Opcodes.IOR : (opcode & 0xF) == 0x2 ? Opcodes.IAND : Opcodes.IXOR);
+                        mv.visitInsn(Opcodes.BASTORE);
+                    }
+                    case 0x4 -> {
+                        // sum = registers[x] + registers[y]; VF = sum > 255; registers[x] = sum
+                        load_register(mv, x);
+                        load_register(mv, y);
+                        mv.visitInsn(Opcodes.IADD);
+                        mv.visitVarInsn(Opcodes.ISTORE, SUM_LOCAL);
+                        store_register(mv, 0xF);
+                        push(mv, 255);
+                        mv.visitVarInsn(Opcodes.ILOAD, SUM_LOCAL);
+                        emit_less_than(mv);
+                        mv.visitInsn(Opcodes.BASTORE);
+                        store_register(mv, x);
+                        mv.visitVarInsn(Opcodes.ILOAD, SUM_LOCAL);
+                        mv.visitInsn(Opcodes.BASTORE);
+                    }
+                    case 0x5, 0x7 -> {
+                        // VF = minuend > subtrahend, then registers[x] = minuend - subtrahend, read after VF is set
+                        int minuend = (opcode & 0xF) == 0x5 ? x : y;
+                        int subtrahend = (opcode & 0xF) == 0x5 ? y : x;
+                        store_register(mv, 0xF);
+                        load_register(mv, subtrahend);
+                        load_register(mv, minuend);
+                        emit_less_than(mv);
+                        mv.visitInsn(Opcodes.BASTORE);
+                        store_register(mv, x);
+                        load_register(mv, minuend);
+                        load_register(mv, subtrahend);
+                        mv.visitInsn(Opcodes.ISUB);
+                        mv.visitInsn(Opcodes.BASTORE);
+                    }
+                    case 0x6 -> {
+                        // VF = registers[x] & 1; registers[x] >>= 1
+                        store_register(mv, 0xF);
+                        load_register(mv, x);
+                        mv.visitInsn(Opcodes.ICONST_1);
+                        mv.visitInsn(Opcodes.IAND);
+                        mv.visitInsn(Opcodes.BASTORE);
+                        store_register(mv, x);
+                        load_register(mv, x);
+                        mv.visitInsn(Opcodes.ICONST_1);
+                        mv.visitInsn(Opcodes.ISHR);
+                        mv.visitInsn(Opcodes.BASTORE);
+                    }
+                    case 0xE -> {
+                        // VF = (registers[x] & 0x80) >> 7; registers[x] <<= 1
+                        store_register(mv, 0xF);
+                        load_register(mv, x);
+                        push(mv, 0x80);
+                        mv.visitInsn(Opcodes.IAND);
+                        push(mv, 7);
+                        mv.visitInsn(Opcodes.ISHR);
+                        mv.visitInsn(Opcodes.BASTORE);
+                        store_register(mv, x);
+                        load_register(mv, x);
+                        mv.visitInsn(Opcodes.ICONST_1);
+                        mv.visitInsn(Opcodes.ISHL);
+                        mv.visitInsn(Opcodes.BASTORE);
+                    }
+                    default -> {
+                        return false;
+                    }
+                }
+            }
+            case 0xA -> {
+                // I = nnn
+                mv.visitVarInsn(Opcodes.ALOAD, CPU_LOCAL);
+                push(mv, opcode & 0x0FFF);
+                mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, CPU_NAME, "set_i", "(I)V", false);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Pushes the array and index of a register store, the value to store comes next.
+    private static void store_register(MethodVisitor mv, int register) {
+        mv.visitVarInsn(Opcodes.ALOAD, REGISTERS_LOCAL);
+        push(mv, register);
+    }
+
+    private static void load_register(MethodVisitor mv, int register) {
+        store_register(mv, register);
+        mv.visitInsn(Opcodes.BALOAD);
+    }
+
+    // a, b -> 1 if a < b, else 0. Without a branch: both are at most 16 bits, so a - b is negative exactly when a < b.
+    private static void emit_less_than(MethodVisitor mv) {
+        mv.visitInsn(Opcodes.ISUB);
+        push(mv, 31);
+        mv.visitInsn(Opcodes.IUSHR);
+    }
+
+    private static void push(MethodVisitor mv, int value) {
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        else
+            mv.visitLdcInsn(value);
+    }
+
+    private static void emit_set_pc(MethodVisitor mv, int pc) {
+        mv.visitVarInsn(Opcodes.ALOAD, CPU_LOCAL);
+        push(mv, pc);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, CPU_NAME, "set_pc", "(I)V", false);
+    }
+
+    private Block define(byte[] bytes, List<Decoder.Handler> handlers) {
+        try {
+            // Hidden classes are unloaded once the block is dropped from the cache.
+            Class<?> block_class = lookup.defineHiddenClassWithClassData(bytes, List.copyOf(handlers), true).lookupClass();
+            return (Block) lookup.findConstructor(block_class, MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Can't define recompiled block", e);
+        }
+    }
+
+    /**
+     * Drops the blocks overlapping the written addresses.
+     */
+    @Override
+    public void on_write(int address, int length) {
+        int end = Math.min(address + length, MEMORY_SIZE);
+        for (int i = address; i < end; i++) {
+            int start = owners[i] - 1;
+            if (start < 0)
+                continue;
+            Arrays.fill(owners, start, start + 2 * block_lengths[start], 0);
+            blocks[start] = null;
+            invalidations++;
+            if (recompiles[start] <= MAX_RECOMPILES)
+                recompiles[start]++;
+        }
+    }
+
+    /**
+     * Drops all the blocks, and forgets how often they were recompiled: the new RAM may hold another program.
+     */
+    @Override
+    public void on_reset() {
+        Arrays.fill(blocks, null);
+        Arrays.fill(recompiles, (byte) 0);
+        Arrays.fill(owners, 0);
+        if (block_handlers != null)
+            Arrays.fill(block_handlers, null);
+    }
+
+    public long get_compiled_blocks() {
+        return compiled_blocks;
+    }
+
+    public long get_block_runs() {
+        return block_runs;
+    }
+
+    public long get_interpreted_instructions() {
+        return interpreted_instructions;
+    }
+
+    public long get_invalidations() {
+        return invalidations;
+    }
+}
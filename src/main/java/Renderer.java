@@ -0,0 +1,162 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
+
+/**
+ * Renders the display through a 64x32 image (128x64 in high resolution): the framebuffer is written straight into the image's int[] raster,
+ * the two XO-CHIP planes of a pixel picking one of four colors,
+ * and the image is drawn scaled with a single drawImage, instead of one fillRect per lit pixel.
+ * When the screen supports it, the image is copied into an accelerated VolatileImage and scaled by the GPU.
+ * Also works offscreen, without any window (see snapshot).
+ */
+public class Renderer {
+    // Color of each pixel value: bit N is set if the pixel is lit in plane N. A single plane is black and white.
+    private static final int[] PALETTE = {0x000000, 0xFFFFFF, 0xFF6600, 0x662200};
+
+    // One image per mode, one int per display pixel, row by row.
+    private final BufferedImage lores_image = new BufferedImage(Display.COLS, Display.ROWS, BufferedImage.TYPE_INT_RGB);
+    private final BufferedImage hires_image = new BufferedImage(Display.HIRES_COLS, Display.HIRES_ROWS, BufferedImage.TYPE_INT_RGB);
+
+    // Image of the current mode
+    private BufferedImage image = lores_image;
+    private int[] raster = raster_of(lores_image);
+    private boolean hires;
+
+    // Rows currently in the raster, to find what changed in a new frame. Two longs per row, plane after plane, as in FrameExchange.Frame.
+    private final long[] shown = new long[Display.PLANES * Display.PLANE_WORDS];
+
+    // Accelerated copy of the image, only used on screen.
+    private VolatileImage volatile_image;
+    private boolean volatile_stale = true;
+
+    /**
+     * Copies rows of the display into the raster.
+     * @param rows Rows to copy, bit N is row N. Pass -1 to copy all rows.
+     */
+    public void update(Display display, long rows) {
+        if (set_mode(display.is_hires()))
+            rows = -1L;
+        int height = display.get_rows();
+        while (rows != 0) {
+            int row = Long.numberOfTrailingZeros(rows);
+            rows &= rows - 1;
+            if (row >= height)
+                break;
+            update_row(row, display.get_plane_row(0, row, 0), display.get_plane_row(0, row, 1),
+                    display.get_plane_row(1, row, 0), display.get_plane_row(1, row, 1));
+        }
+        volatile_stale = true;
+    }
+
+    /**
+     * Copies the rows of a frame that differ from what the raster shows.
+     * @param rows Packed rows, as in FrameExchange.Frame.
+     * @param hires True for a 128x64 frame.
+     */
+    public void update(long[] rows, boolean hires) {
+        boolean all = set_mode(hires);
+        int height = get_rows();
+        for (int row = 0; row < height; row++) {
+            int index = row * Display.WORDS_PER_ROW;
+            int second = Display.PLANE_WORDS + index;
+            if (all || rows[index] != shown[index] || rows[index + 1] != shown[index + 1]
+                    || rows[second] != shown[second] || rows[second + 1] != shown[second + 1])
+                update_row(row, rows[index], rows[index + 1], rows[second], rows[second + 1]);
+        }
+        volatile_stale = true;
+    }
+
+    /**
+     * Switches to the image of the mode.
+     * @return True if the mode changed, the new image must be fully updated.
+     */
+    private boolean set_mode(boolean hires) {
+        if (hires == this.hires)
+            return false;
+        this.hires = hires;
+        image = hires ? hires_image : lores_image;
+        raster = raster_of(image);
+        volatile_image = null;
+        return true;
+    }
+
+    private void update_row(int row, long left, long right, long second_left, long second_right) {
+        int index = row * Display.WORDS_PER_ROW;
+        shown[index] = left;
+        shown[index + 1] = right;
+        shown[Display.PLANE_WORDS + index] = second_left;
+        shown[Display.PLANE_WORDS + index + 1] = second_right;
+        int cols = get_cols();
+        int offset = row * cols;
+        for (int col = 0; col < 64; col++) {
+            // Most significant bit is column 0, shift the current column into the lowest bit.
+            int shift = 63 - col;
+            raster[offset + col] = PALETTE[(int) ((left >>> shift) & 1 | ((second_left >>> shift) & 1) << 1)];
+        }
+        for (int col = 64; col < cols; col++) {
+            int shift = 127 - col;
+            raster[offset + col] = PALETTE[(int) ((right >>> shift) & 1 | ((second_right >>> shift) & 1) << 1)];
+        }
+    }
+
+    private static int[] raster_of(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Width of the image shown, in display pixels.
+     */
+    public int get_cols() {
+        return hires ? Display.HIRES_COLS : Display.COLS;
+    }
+
+    public int get_rows() {
+        return hires ? Display.HIRES_ROWS : Display.ROWS;
+    }
+
+    /**
+     * Draws the image scaled to width x height screen pixels, at the top left corner.
+     * @param gc Configuration of the screen, used to create an accelerated image. May be null.
+     */
+    public void draw(Graphics g, int width, int height, GraphicsConfiguration gc) {
+        if (g instanceof Graphics2D g2d)
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+        if (gc == null || !gc.getImageCapabilities().isAccelerated()) {
+            g.drawImage(image, 0, 0, width, height, null);
+            return;
+        }
+
+        // The contents of a VolatileImage can be lost at any time (e.g. display mode change), then it's redrawn.
+        do {
+            int status = volatile_image == null ? VolatileImage.IMAGE_INCOMPATIBLE : volatile_image.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                volatile_image = gc.createCompatibleVolatileImage(image.getWidth(), image.getHeight());
+                volatile_stale = true;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                // The surface is back, but its contents are undefined.
+                volatile_stale = true;
+            }
+            if (volatile_stale || volatile_image.contentsLost()) {
+                Graphics2D vg = volatile_image.createGraphics();
+                vg.drawImage(image, 0, 0, null);
+                vg.dispose();
+                volatile_stale = false;
+            }
+            g.drawImage(volatile_image, 0, 0, width, height, null);
+        } while (volatile_image.contentsLost());
+    }
+
+    /**
+     * Renders the whole display offscreen, each display pixel becomes scale x scale image pixels.
+     */
+    public BufferedImage snapshot(Display display, int scale) {
+        update(display, -1L);
+        BufferedImage snapshot = new BufferedImage(get_cols() * scale, get_rows() * scale, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = snapshot.createGraphics();
+        draw(g, snapshot.getWidth(), snapshot.getHeight(), null);
+        g.dispose();
+        return snapshot;
+    }
+}
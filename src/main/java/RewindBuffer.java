@@ -0,0 +1,283 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Keeps the machine state of the last frames, to step backwards in time.
+ * Every keyframe_interval frames the full save state is kept (a keyframe). The frames in between keep only
+ * a delta against their keyframe: the XOR of the two states, with the runs of zeros (unchanged bytes) left out.
+ * Most of RAM doesn't change from frame to frame, so a delta is a few dozen bytes instead of 66 KB.
+ *
+ * Rewinding restores the keyframe and applies one delta, a couple of microseconds whatever the distance.
+ * Memory is bounded by the capacity: once full, the oldest frames are dropped, a whole keyframe interval at a time.
+ * Buffers are reused: a keyframe takes a full-size buffer from a pool and gives it back when its slot is overwritten,
+ * and the delta buffer of a slot only ever grows. Once the buffer has cycled, pushing allocates nothing.
+ *
+ * Delta format, repeated until the end of the state: skip (2 bytes), length (2 bytes), length XORed bytes.
+ * Both are unsigned 16 bits, so longer skips and literals are split into several records.
+ */
+public class RewindBuffer {
+    // Zero runs shorter than this stay inside the XOR literal, a skip costs 4 bytes.
+    private static final int MIN_SKIP = 4;
+    // Largest skip or literal of a single record
+    private static final int MAX_RECORD = 0xFFFF;
+
+    private final int capacity;
+    private final int keyframe_interval;
+
+    // Ring of frames, oldest at index 'oldest'. Data of each slot: its delta buffer, or a keyframe buffer.
+    private final byte[][] frames;
+    // Delta buffer of each slot, kept while the slot holds a keyframe.
+    private final byte[][] deltas;
+    // Keyframe buffers (SaveState.SIZE bytes) not in use.
+    private final ArrayDeque<byte[]> spare_keyframes = new ArrayDeque<>();
+    private final int[] lengths;
+    // Slot of the keyframe of each frame, a keyframe is its own keyframe.
+    private final int[] keyframes;
+    private int oldest;
+    private int size;
+
+    // Slot of the most recent keyframe, and frames pushed since it.
+    private int keyframe = -1;
+    private int since_keyframe;
+
+    private final SaveState current = new SaveState();
+    private final byte[] encoded = new byte[max_encoded_size()];
+
+    /**
+     * Total frames pushed and rewound, for statistics.
+     */
+    private long pushed;
+    private long rewound;
+
+    /**
+     * @param capacity Maximum number of frames kept, e.g. 10 seconds is 600 frames.
+     * @param keyframe_interval A full state is kept every this many frames, the others are deltas.
+     *                          At most half the capacity: a full buffer drops a whole interval at a time.
+     */
+    public RewindBuffer(int capacity, int keyframe_interval) {
+        if (capacity < 1 || keyframe_interval < 1)
+            throw new IllegalArgumentException("Capacity and keyframe interval must be positive, got: " + capacity + ", " + keyframe_interval);
+        this.capacity = capacity;
+        this.keyframe_interval = Math.max(1, Math.min(keyframe_interval, capacity / 2));
+        this.frames = new byte[capacity][];
+        this.deltas = new byte[capacity][];
+        this.lengths = new int[capacity];
+        this.keyframes = new int[capacity];
+    }
+
+    /**
+     * Records the current state of the cpu as the newest frame. Call once per frame.
+     */
+    public void push(CPU cpu) {
+        current.capture(cpu);
+        byte[] state = current.get_data();
+
+        if (size == capacity)
+            drop_oldest();
+
+        int slot = (oldest + size) % capacity;
+        if (keyframe < 0 || since_keyframe >= keyframe_interval) {
+            store_keyframe(slot, state);
+            keyframe = slot;
+            since_keyframe = 0;
+        } else {
+            store_delta(slot, encoded, encode(frames[keyframe], state, encoded));
+        }
+        keyframes[slot] = keyframe;
+        since_keyframe++;
+        size++;
+        pushed++;
+    }
+
+    /**
+     * Steps back: drops the newest frames, and puts the cpu in the state of the newest remaining frame.
+     * @param count Number of frames to go back, 1 restores the state of the frame before the newest.
+     * @return The number of frames actually rewound, less than count if the buffer doesn't go back that far.
+     */
+    public int rewind(CPU cpu, int count) {
+        int steps = Math.min(count, size - 1);
+        if (steps <= 0)
+            return 0;
+        size -= steps;
+        rewound += steps;
+
+        int slot = (oldest + size - 1) % capacity;
+        int key = keyframes[slot];
+        byte[] state = current.get_data();
+        System.arraycopy(frames[key], 0, state, 0, state.length);
+        if (slot != key)
+            decode(frames[slot], lengths[slot], state);
+        current.restore(cpu);
+
+        // Next frames are deltas against the keyframe of the restored frame, which is still kept.
+        keyframe = key;
+        since_keyframe = (slot - key + capacity) % capacity + 1;
+        return steps;
+    }
+
+    public void clear() {
+        size = 0;
+        oldest = 0;
+        keyframe = -1;
+    }
+
+    private void drop_oldest() {
+        // Drop a whole keyframe interval, its deltas are useless without the keyframe.
+        int key = oldest;
+        do {
+            oldest = (oldest + 1) % capacity;
+            size--;
+        } while (size > 0 && keyframes[oldest] == key);
+        if (key == keyframe)
+            keyframe = -1;
+    }
+
+    private void store_keyframe(int slot, byte[] state) {
+        if (!holds_keyframe(slot))
+            frames[slot] = spare_keyframes.isEmpty() ? new byte[SaveState.SIZE] : spare_keyframes.pop();
+        System.arraycopy(state, 0, frames[slot], 0, state.length);
+        lengths[slot] = state.length;
+    }
+
+    private void store_delta(int slot, byte[] delta, int length) {
+        if (holds_keyframe(slot))
+            spare_keyframes.push(frames[slot]);
+        // Grows by doubling, up to the largest delta, so a slot is reallocated a few times at most.
+        byte[] buffer = deltas[slot];
+        if (buffer == null || buffer.length < length)
+            deltas[slot] = buffer = new byte[Math.min(Math.max(length, buffer == null ? 64 : 2 * buffer.length), encoded.length)];
+        frames[slot] = buffer;
+        System.arraycopy(delta, 0, buffer, 0, length);
+        lengths[slot] = length;
+    }
+
+    // True if the slot's data is a keyframe buffer, even if the frame itself was dropped since.
+    private boolean holds_keyframe(int slot) {
+        return frames[slot] != null && frames[slot] != deltas[slot];
+    }
+
+    /**
+     * Writes the delta from base to state into out.
+     * @return The length of the delta.
+     */
+    static int encode(byte[] base, byte[] state, byte[] out) {
+        int length = 0;
+        int i = 0;
+        int n = state.length;
+        while (i < n) {
+            // Unchanged bytes, compared many at a time.
+            int skip = Arrays.mismatch(base, i, n, state, i, n);
+            if (skip < 0)
+                break;
+            i += skip;
+            for (; skip > MAX_RECORD; skip -= MAX_RECORD)
+                length = put_header(out, length, MAX_RECORD, 0);
+
+            // Literal, until a run of at least MIN_SKIP equal bytes (or the end).
+            int literal_start = i;
+            int equal = 0;
+            while (i < n && equal < MIN_SKIP && i - literal_start < MAX_RECORD) {
+                equal = base[i] == state[i] ? equal + 1 : 0;
+                i++;
+            }
+            int literal_end = i - equal;
+            i = literal_end;
+
+            int literal = literal_end - literal_start;
+            length = put_header(out, length, skip, literal);
+            for (int j = literal_start; j < literal_end; j++)
+                out[length++] = (byte) (base[j] ^ state[j]);
+        }
+        return length;
+    }
+
+    private static int put_header(byte[] out, int length, int skip, int literal) {
+        out[length++] = (byte) (skip >> 8);
+        out[length++] = (byte) skip;
+        out[length++] = (byte) (literal >> 8);
+        out[length++] = (byte) literal;
+        return length;
+    }
+
+    /**
+     * Applies a delta to state, which holds the delta's base.
+     */
+    static void decode(byte[] delta, int length, byte[] state) {
+        int position = 0;
+        int i = 0;
+        while (i < length) {
+            int skip = ((delta[i] & 0xFF) << 8) | (delta[i + 1] & 0xFF);
+            int literal = ((delta[i + 2] & 0xFF) << 8) | (delta[i + 3] & 0xFF);
+            i += 4;
+            position += skip;
+            for (int j = 0; j < literal; j++)
+                state[position++] ^= delta[i++];
+        }
+    }
+
+    // Worst case: literals split by runs of MIN_SKIP equal bytes, 4 header bytes each, plus the records of long skips.
+    private static int max_encoded_size() {
+        return SaveState.SIZE + 4 * (SaveState.SIZE / MIN_SKIP + 1) + 4 * (SaveState.SIZE / MAX_RECORD + 1);
+    }
+
+    /**
+     * Frames currently kept, the buffer can rewind size - 1 frames.
+     */
+    public int get_size() {
+        return size;
+    }
+
+    public int get_keyframe_interval() {
+        return keyframe_interval;
+    }
+
+    public int get_capacity() {
+        return capacity;
+    }
+
+    /**
+     * Bytes of frame data currently kept.
+     */
+    public long get_used_bytes() {
+        long used = 0;
+        for (int i = 0; i < size; i++)
+            used += lengths[(oldest + i) % capacity];
+        return used;
+    }
+
+    /**
+     * Bytes allocated for frame data, including reusable space.
+     */
+    public long get_footprint_bytes() {
+        long footprint = encoded.length + SaveState.SIZE + (long) spare_keyframes.size() * SaveState.SIZE;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (deltas[slot] != null)
+                footprint += deltas[slot].length;
+            if (holds_keyframe(slot))
+                footprint += SaveState.SIZE;
+        }
+        return footprint;
+    }
+
+    /**
+     * Size of the kept frames as full save states, divided by their actual size.
+     */
+    public double get_compression_ratio() {
+        long used = get_used_bytes();
+        return used == 0 ? 1 : (double) size * SaveState.SIZE / used;
+    }
+
+    public long get_pushed() {
+        return pushed;
+    }
+
+    public long get_rewound() {
+        return rewound;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("frames=%d/%d used=%d footprint=%d ratio=%.1f", size, capacity,
+                get_used_bytes(), get_footprint_bytes(), get_compression_ratio());
+    }
+}
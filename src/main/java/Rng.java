@@ -0,0 +1,40 @@
+/**
+ * Random number generator of the CPU (Cxkk).
+ * Same linear congruential generator as java.util.Random, so a seed gives the same numbers,
+ * but its state can be read and restored, for save states.
+ */
+public class Rng {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;
+
+    public Rng(long seed) {
+        this.state = scramble(seed);
+    }
+
+    public void set_seed(long seed) {
+        this.state = scramble(seed);
+    }
+
+    private static long scramble(long seed) {
+        return (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Same as java.util.Random.nextInt().
+     */
+    public int next_int() {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> 16);
+    }
+
+    public long get_state() {
+        return state;
+    }
+
+    public void set_state(long state) {
+        this.state = state & MASK;
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Collection of ROM files, indexed by the SHA-1 of their content.
+ * Files are memory-mapped to validate and hash them, and the result is kept in an on-disk index together with
+ * per-ROM settings (instructions per frame). A file whose size and modification time didn't change since it
+ * was indexed is neither read nor hashed again, so scanning a large, already indexed collection is cheap.
+ *
+ * The index is a tab separated text file, one line per ROM file:
+ * sha1, size, modified (ms since epoch), instructions per frame (0 for the default), path.
+ * Edit the instructions per frame by hand to set the speed of a ROM, it follows the ROM's content (SHA-1) to other paths.
+ *
+ * Usage: RomLibrary <rom or directory>... [--index FILE]
+ * Lists the ROMs with their hash and settings, and updates the index file if given.
+ */
+public class RomLibrary {
+    private static final String HEADER = "# sha1\tsize\tmodified\tipf\tpath";
+
+    /**
+     * @param instructions_per_frame Recommended speed, 0 if not known.
+     */
+    public record Rom(Path path, String sha1, int size, long modified, int instructions_per_frame) {
+        Rom with_settings(int instructions_per_frame) {
+            return new Rom(path, sha1, size, modified, instructions_per_frame);
+        }
+
+        /**
+         * Instructions per frame to run the ROM at: its recommended value if known, else the given default.
+         */
+        public int instructions_per_frame_or(int default_value) {
+            return instructions_per_frame > 0 ? instructions_per_frame : default_value;
+        }
+    }
+
+    // Index file, may be null: nothing is kept between runs.
+    private final Path index_file;
+    private final Map<Path, Rom> by_path = new HashMap<>();
+    private final Map<String, Rom> by_sha1 = new HashMap<>();
+    private boolean modified;
+
+    /**
+     * Counters of the scans
+     */
+    private long hashed;    // Files read and hashed
+    private long cached;    // Files found unchanged in the index
+
+    /**
+     * @param index_file Loaded if it exists, written by save. May be null for a library without an index.
+     */
+    public RomLibrary(Path index_file) throws IOException {
+        this.index_file = index_file;
+        if (index_file != null && Files.exists(index_file))
+            load_index();
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> paths = new ArrayList<>();
+        Path index = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--index"))
+                index = Path.of(args[++i]);
+            else
+                paths.add(args[i]);
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: RomLibrary <rom or directory>... [--index FILE]");
+            System.exit(1);
+        }
+
+        RomLibrary library = new RomLibrary(index);
+        long start = System.nanoTime();
+        List<Rom> roms = new ArrayList<>();
+        for (String path : paths)
+            roms.addAll(library.scan(Path.of(path)));
+        long elapsed = System.nanoTime() - start;
+        library.save();
+
+        for (Rom rom : roms)
+            System.out.printf("%s %5d ipf=%-4d %s%n", rom.sha1(), rom.size(), rom.instructions_per_frame(), rom.path());
+        System.out.printf("roms=%d hashed=%d cached=%d time=%.1fms%n", roms.size(), library.get_hashed(), library.get_cached(), elapsed / 1e6);
+    }
+
+    /**
+     * Indexes a ROM file, or every .ch8 file of a directory and its subdirectories.
+     * @return The ROMs found, sorted by path.
+     */
+    public List<Rom> scan(Path path) throws IOException {
+        if (!Files.isDirectory(path))
+            return List.of(add(path));
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(path)) {
+            files = walk.filter(f -> f.toString().endsWith(".ch8") && Files.isRegularFile(f)).sorted().toList();
+        }
+        List<Rom> roms = new ArrayList<>(files.size());
+        for (Path file : files)
+            roms.add(add(file));
+        return roms;
+    }
+
+    /**
+     * Indexes a single ROM file. Only reads and hashes it if it changed since it was indexed.
+     * @throws IOException If the file can't be read, or is too large to load.
+     */
+    public Rom add(Path file) throws IOException {
+        Path path = file.toAbsolutePath().normalize();
+        long size = Files.size(path);
+        long modified_time = Files.getLastModifiedTime(path).toMillis();
+
+        Rom rom = by_path.get(path);
+        if (rom != null && rom.size() == size && rom.modified() == modified_time) {
+            cached++;
+            return rom;
+        }
+
+        check_size(size, path.toString());
+        String sha1;
+        try (FileChannel channel = FileChannel.open(path)) {
+            sha1 = sha1(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        hashed++;
+
+        // Settings follow the content: a known ROM under a new path (or touched) keeps them.
+        Rom known = by_sha1.get(sha1);
+        rom = known == null
+                ? new Rom(path, sha1, (int) size, modified_time, 0)
+                : new Rom(path, sha1, (int) size, modified_time, known.instructions_per_frame());
+        put(rom);
+        return rom;
+    }
+
+    /**
+     * Reads the program of a ROM, through a memory mapping of its file.
+     * @throws IOException If the file changed since it was indexed.
+     */
+    public byte[] load(Rom rom) throws IOException {
+        byte[] program = read(rom.path());
+        if (program.length != rom.size())
+            throw new IOException("ROM changed since it was indexed: " + rom.path());
+        return program;
+    }
+
+    /**
+     * Reads a ROM file through a memory mapping, checking that it fits in RAM.
+     */
+    public static byte[] read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            long size = channel.size();
+            check_size(size, file.toString());
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] program = new byte[(int) size];
+            mapped.get(program);
+            return program;
+        }
+    }
+
+    /**
+     * @throws IOException If a program of this size doesn't fit in RAM after the interpreter area.
+     */
+    public static void check_size(long size, String name) throws IOException {
+        if (size == 0)
+            throw new IOException("ROM is empty: " + name);
+        if (size > CPU.MAX_PROGRAM_SIZE)
+            throw new IOException("ROM has " + size + " bytes, at most " + CPU.MAX_PROGRAM_SIZE + " fit in RAM: " + name);
+    }
+
+    public Rom get(String sha1) {
+        return by_sha1.get(sha1);
+    }
+
+    /**
+     * Sets the recommended settings of a ROM, for every path it has. Kept in the index by save.
+     */
+    public void set_settings(String sha1, int instructions_per_frame) {
+        if (!by_sha1.containsKey(sha1))
+            throw new IllegalArgumentException("Unknown ROM: " + sha1);
+        for (Rom rom : new ArrayList<>(by_path.values()))
+            if (rom.sha1().equals(sha1))
+                put(rom.with_settings(instructions_per_frame));
+    }
+
+    /**
+     * Writes the index file, if the library has one and anything changed.
+     */
+    public void save() throws IOException {
+        if (index_file == null || !modified)
+            return;
+        List<Rom> roms = new ArrayList<>(by_path.values());
+        roms.sort((a, b) -> a.path().compareTo(b.path()));
+        try (BufferedWriter out = Files.newBufferedWriter(index_file)) {
+            out.write(HEADER);
+            out.newLine();
+            for (Rom rom : roms) {
+                out.write(String.join("\t", rom.sha1(), Integer.toString(rom.size()), Long.toString(rom.modified()),
+                        Integer.toString(rom.instructions_per_frame()), rom.path().toString()));
+                out.newLine();
+            }
+        }
+        modified = false;
+    }
+
+    private void load_index() throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(index_file)) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.isBlank() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5)
+                    throw new IOException("Invalid ROM index line " + number + ": " + index_file);
+                try {
+                    put(new Rom(Path.of(fields[4]), fields[0], Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                            Integer.parseInt(fields[3])));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid ROM index line " + number + ": " + index_file, e);
+                }
+            }
+        }
+        modified = false;
+    }
+
+    private void put(Rom rom) {
+        by_path.put(rom.path(), rom);
+        by_sha1.put(rom.sha1(), rom);
+        modified = true;
+    }
+
+    private static String sha1(MappedByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int get_size() {
+        return by_path.size();
+    }
+
+    public long get_hashed() {
+        return hashed;
+    }
+
+    public long get_cached() {
+        return cached;
+    }
+}
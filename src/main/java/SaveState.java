@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Snapshot of the whole machine, in a fixed size, versioned binary format (big endian):
+ * <pre>
+ * magic "C8SS" (4), version (4),
+ * V0-VF (16), I (2), PC (2), SP (1), delay timer (1), sound timer (1), stack (16 x 2),
+ * RAM (65536), display mode (1, 1 for 128x64), selected planes (1), display (2 planes x 64 rows x 2 x 8),
+ * random generator state (8), keypad (2, bit N is key N), Fx0A wait (1, 0x80 | register while waiting, else 0),
+ * RPL user flags (16)
+ * </pre>
+ * Capture and restore are bulk copies into a preallocated buffer, of about 66 KB since the RAM is 64 KB (XO-CHIP):
+ * about 2 and 3.5 microseconds (SaveStateBenchmark). A restore also drops the code cached by a DecodeCache or Recompiler,
+ * which decodes or recompiles it again as it runs: with a Recompiler, a restore takes about 40 microseconds.
+ * A single SaveState can be captured over and over without allocating.
+ */
+public class SaveState {
+    private static final int MAGIC = 0x43385353;
+    // The format changes with the machine, a state of another version is refused rather than converted.
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    public static final int SIZE = HEADER_SIZE + 16 + 2 + 2 + 1 + 1 + 1 + 16 * 2 + CPU.MEMORY_SIZE + Display.STATE_SIZE + 8 + 2 + 1 + 16;
+
+    private final byte[] data = new byte[SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(data);
+
+    /**
+     * Captures the state of the cpu into a new SaveState.
+     */
+    public static SaveState of(CPU cpu) {
+        SaveState state = new SaveState();
+        state.capture(cpu);
+        return state;
+    }
+
+    /**
+     * Overwrites this snapshot with the current state of the cpu.
+     */
+    public void capture(CPU cpu) {
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        cpu.save_state(buffer);
+    }
+
+    /**
+     * Puts the cpu (and its display) back in the captured state.
+     */
+    public void restore(CPU cpu) {
+        buffer.clear();
+        buffer.position(HEADER_SIZE);
+        cpu.load_state(buffer);
+    }
+
+    /**
+     * Copies another snapshot into this one.
+     */
+    public void copy_from(SaveState other) {
+        System.arraycopy(other.data, 0, data, 0, SIZE);
+    }
+
+    /**
+     * Raw bytes of the snapshot, in the file format. Not a copy.
+     */
+    byte[] get_data() {
+        return data;
+    }
+
+    public void write(Path file) throws IOException {
+        Files.write(file, data);
+    }
+
+    public static SaveState read(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || header.getInt() != MAGIC)
+            throw new IOException("Not a save state: " + file);
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Save state version " + version + " is not supported, only version " + VERSION
+                    + " can be loaded: save the state again with this build: " + file);
+        if (bytes.length != SIZE)
+            throw new IOException("Save state has " + bytes.length + " bytes, expected " + SIZE + ": " + file);
+
+        SaveState state = new SaveState();
+        System.arraycopy(bytes, 0, state.data, 0, SIZE);
+        return state;
+    }
+}
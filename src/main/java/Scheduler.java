@@ -0,0 +1,283 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the CPU in 60 Hz frames.
+ * Each frame latches the keys, executes a fixed budget of instructions in one batch, then ticks the delay and sound timers once.
+ * With a Beeper, each frame also renders its 1/60 s of sound, so audio follows the sound timer frame by frame.
+ * Frames are paced with System.nanoTime: a late frame is caught up by running the next frames back to back,
+ * and when the emulation falls too far behind (debugger, GC pause, machine sleep) the missed frames are skipped.
+ * While the CPU waits for a key (Fx0A) frames go on for the timers and the display, but without spinning, and once the
+ * timers stopped the thread parks until a key event: a ROM waiting for input costs no CPU time.
+ */
+public class Scheduler {
+    public static final int FRAMES_PER_SECOND = 60;
+    public static final long FRAME_NANOS = 1_000_000_000L / FRAMES_PER_SECOND;
+
+    // 600 instructions per second, a common speed for CHIP-8 games.
+    public static final int DEFAULT_INSTRUCTIONS_PER_FRAME = 10;
+
+    // Behind by more than this many frames: skip them instead of catching up.
+    private static final int MAX_CATCH_UP_FRAMES = 5;
+
+    // Sleep until this close to the deadline, then spin. OS sleep granularity is about 1ms.
+    private static final long SPIN_NANOS = 1_500_000;
+
+    private static final long REPORT_NANOS = 1_000_000_000L;
+
+    // Longest park while idle (waiting for a key, timers stopped). Keeps the periodic report going.
+    private static final long IDLE_PARK_NANOS = REPORT_NANOS;
+
+    private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
+
+    private final CPU cpu;
+    private final ExecutionEngine engine;
+    private final FramePresenter presenter;
+    private final int instructions_per_frame;
+
+    // Sound of the sound timer, may be null.
+    private Beeper beeper;
+
+    // Records the state of every frame, may be null.
+    private RewindBuffer rewind_buffer;
+
+    // Keys come from the movie instead of the input when replaying, may be null.
+    private InputMovie.Player replay;
+    // Key changes are recorded into this movie, may be null.
+    private InputMovie recording;
+    // Frame count when the replay and the recording started: frame 0 of their movie.
+    private long replay_start;
+    private long recording_start;
+
+    /**
+     * Totals since start
+     */
+    private long frames;
+    private long instructions;
+    private long skipped_frames;
+
+    /**
+     * Measurement of the last report period
+     */
+    private double measured_ips;
+    private double average_jitter_micros;
+    private double max_jitter_micros;
+
+    public Scheduler(CPU cpu, FramePresenter presenter, int instructions_per_frame) {
+        this(cpu, cpu, presenter, instructions_per_frame);
+    }
+
+    /**
+     * @param engine Executes the instructions of each frame, for example a Recompiler of the cpu.
+     */
+    public Scheduler(CPU cpu, ExecutionEngine engine, FramePresenter presenter, int instructions_per_frame) {
+        if (instructions_per_frame <= 0)
+            throw new IllegalArgumentException("Instructions per frame must be positive, got: " + instructions_per_frame);
+        this.cpu = cpu;
+        this.engine = engine;
+        this.presenter = presenter;
+        this.instructions_per_frame = instructions_per_frame;
+    }
+
+    /**
+     * Runs a single frame: latches the keys, the instruction budget, the frame's sound, one 60 Hz timer tick,
+     * then presents the display if it changed.
+     */
+    public void run_frame() {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        latch_keys();
+        instructions += engine.execute(instructions_per_frame);
+        if (beeper != null)
+            beeper.end_frame(cpu.is_sound_on());
+        cpu.tick_timers();
+        presenter.end_frame();
+        if (rewind_buffer != null)
+            rewind_buffer.push(cpu);
+        frames++;
+        if (Metrics.ENABLED)
+            cpu.get_metrics().end_frame(start);
+    }
+
+    private void latch_keys() {
+        int changed = replay != null ? replay.apply(frames - replay_start, cpu) : cpu.latch_input();
+        if (recording == null)
+            return;
+        while (changed != 0) {
+            int key = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            recording.record(frames - recording_start, key, cpu.is_key_pressed(key));
+        }
+    }
+
+    /**
+     * Runs frames back to back, as fast as possible (no pacing). Used by headless runs.
+     */
+    public void run_frames(long count) {
+        for (long i = 0; i < count; i++)
+            run_frame();
+    }
+
+    /**
+     * Runs frames in real time, forever.
+     */
+    public void run() {
+        long next_frame = System.nanoTime();
+
+        // Report period
+        long period_start = next_frame;
+        long period_instructions = instructions;
+        long period_frames = 0;
+        long jitter_sum = 0;
+        long jitter_max = 0;
+
+        while (true) {
+            if (cpu.is_waiting_for_key() && replay == null) {
+                if (cpu.are_timers_running()) {
+                    // Timers still count at 60 Hz, a late wakeup of a millisecond doesn't matter here.
+                    park_until(next_frame);
+                } else {
+                    // Nothing changes until a key is pressed. Frames restart from the wakeup, they aren't late.
+                    cpu.get_input().await_event(IDLE_PARK_NANOS);
+                    next_frame = Math.max(next_frame, System.nanoTime());
+                }
+            } else {
+                wait_until(next_frame);
+            }
+            long now = System.nanoTime();
+
+            long late = now - next_frame;
+            if (late > MAX_CATCH_UP_FRAMES * FRAME_NANOS) {
+                long skip = late / FRAME_NANOS;
+                skipped_frames += skip;
+                next_frame += skip * FRAME_NANOS;
+                late -= skip * FRAME_NANOS;
+            }
+            if (Metrics.ENABLED)
+                cpu.get_metrics().frame_started(now);
+            jitter_sum += late;
+            jitter_max = Math.max(jitter_max, late);
+            period_frames++;
+
+            run_frame();
+            next_frame += FRAME_NANOS;
+
+            long period = now - period_start;
+            if (period >= REPORT_NANOS) {
+                measured_ips = (instructions - period_instructions) * 1e9 / period;
+                average_jitter_micros = jitter_sum / 1e3 / period_frames;
+                max_jitter_micros = jitter_max / 1e3;
+                // Formatting the report allocates, skip it unless it is logged.
+                if (logger.isDebugEnabled())
+                    log_report();
+
+                period_start = now;
+                period_instructions = instructions;
+                period_frames = 0;
+                jitter_sum = 0;
+                jitter_max = 0;
+            }
+        }
+    }
+
+    private void log_report() {
+        logger.debug(String.format("IPS: %.0f, frame jitter: avg %.1fus, max %.1fus, late frames skipped: %d, presented: %d, coalesced draws: %d, idle instructions skipped: %d",
+                measured_ips, average_jitter_micros, max_jitter_micros, skipped_frames,
+                presenter.get_presented_frames(), presenter.get_coalesced_draws(), cpu.get_skipped_instructions()));
+        FrameExchange exchange = presenter.get_exchange();
+        if (exchange != null)
+            logger.debug(String.format("Frames produced: %d, consumed: %d, dropped: %d",
+                    exchange.get_produced(), exchange.get_consumed(), exchange.get_dropped()));
+        Input input = cpu.get_input();
+        logger.debug(String.format("Key events: %d, dropped: %d, latency: avg %.1fus, max %.1fus",
+                input.get_applied_events(), input.get_dropped_events(),
+                input.get_average_latency_micros(), input.get_max_latency_micros()));
+        if (beeper != null && beeper.get_sink() instanceof AudioLine line)
+            logger.debug(String.format("Audio: beep frames: %d, underruns: %d, dropped frames: %d, latency: %.1fms",
+                    beeper.get_beep_frames(), line.get_underruns(), line.get_dropped_frames(), line.get_latency_millis()));
+    }
+
+    private static void park_until(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0)
+            LockSupport.parkNanos(remaining);
+    }
+
+    /**
+     * Sleeps most of the remaining time, then spins for the last part, to hit the deadline precisely.
+     */
+    private static void wait_until(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS)
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        while (deadline - System.nanoTime() > 0)
+            Thread.onSpinWait();
+    }
+
+    /**
+     * Replays the keys of a movie instead of reading the input. Frame numbers of the movie start at the current frame count.
+     */
+    public void set_replay(InputMovie movie) {
+        this.replay = movie == null ? null : movie.player();
+        this.replay_start = frames;
+    }
+
+    /**
+     * Records every key change into the movie, stamped with its frame. Frame numbers of the movie start at the current frame count.
+     */
+    public void set_recording(InputMovie movie) {
+        this.recording = movie;
+        this.recording_start = frames;
+    }
+
+    public void set_beeper(Beeper beeper) {
+        this.beeper = beeper;
+    }
+
+    public Beeper get_beeper() {
+        return beeper;
+    }
+
+    public void set_rewind_buffer(RewindBuffer rewind_buffer) {
+        this.rewind_buffer = rewind_buffer;
+    }
+
+    public RewindBuffer get_rewind_buffer() {
+        return rewind_buffer;
+    }
+
+    public int get_instructions_per_frame() {
+        return instructions_per_frame;
+    }
+
+    public long get_frames() {
+        return frames;
+    }
+
+    public long get_instructions() {
+        return instructions;
+    }
+
+    public long get_skipped_frames() {
+        return skipped_frames;
+    }
+
+    /**
+     * Instructions per second, measured over the last report period (one second).
+     */
+    public double get_measured_ips() {
+        return measured_ips;
+    }
+
+    /**
+     * How late frames started compared to their deadline, over the last report period.
+     */
+    public double get_average_jitter_micros() {
+        return average_jitter_micros;
+    }
+
+    public double get_max_jitter_micros() {
+        return max_jitter_micros;
+    }
+}
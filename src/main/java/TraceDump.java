@@ -0,0 +1,51 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Prints a trace file written by TraceRecorder, one disassembled instruction per line,
+ * with the state of I, SP and the registers before it executed.
+ *
+ * Usage: TraceDump <trace file>
+ */
+public class TraceDump {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceDump <trace file>");
+            System.exit(1);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Path.of(args[0]))))) {
+            if (in.readInt() != TraceRecorder.MAGIC)
+                throw new IOException("Not a trace file: " + args[0]);
+            int version = in.readInt();
+            if (version != TraceRecorder.VERSION)
+                throw new IOException("Unsupported trace version: " + version);
+            int record_size = in.readInt();
+            long count = in.readLong();
+            int size = in.readInt();
+
+            System.out.printf("%d instructions recorded, last %d:%n", count, size);
+            byte[] record = new byte[record_size];
+            for (int i = 0; i < size; i++) {
+                in.readFully(record);
+                System.out.println(format(count - size + i, record));
+            }
+        }
+    }
+
+    private static String format(long index, byte[] record) {
+        int pc = ((record[0] & 0xFF) << 8) | (record[1] & 0xFF);
+        int opcode = ((record[2] & 0xFF) << 8) | (record[3] & 0xFF);
+        int I = ((record[4] & 0xFF) << 8) | (record[5] & 0xFF);
+        int SP = record[6] & 0xFF;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%10d  %-40s I=0x%03X SP=%-2d V=", index, Disassembler.format(pc, opcode), I, SP));
+        for (int r = 0; r < 16; r++)
+            sb.append(String.format(r == 0 ? "%02X" : " %02X", record[8 + r]));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records the last executed instructions into a preallocated ring buffer, for post-mortem debugging.
+ * Each instruction is a fixed size record, written before it executes:
+ * PC (2 bytes), opcode (2), I (2), SP (1), unused (1), V0 to VF (16). Big endian.
+ * Recording is a few stores and one array copy, no allocation, so it can stay on for whole runs.
+ *
+ * The buffer is written to a binary trace file on demand (write), for example when the CPU throws.
+ * See TraceDump to print a trace file.
+ */
+public class TraceRecorder {
+    public static final int RECORD_SIZE = 24;
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    // File header: magic "C8TR", version, record size, total recorded instructions, records in the file.
+    static final int MAGIC = 0x43385452;
+    static final int VERSION = 1;
+
+    private final byte[] buffer;
+    private final int capacity;
+    private long count;
+
+    /**
+     * @param capacity Number of instructions kept, must be a power of two.
+     */
+    public TraceRecorder(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Trace capacity must be a power of two, got: " + capacity);
+        this.capacity = capacity;
+        this.buffer = new byte[capacity * RECORD_SIZE];
+    }
+
+    /**
+     * Records one instruction, overwriting the oldest record when the buffer is full.
+     */
+    void record(int pc, int opcode, int I, int SP, byte[] registers) {
+        int offset = (int) (count & (capacity - 1)) * RECORD_SIZE;
+        buffer[offset] = (byte) (pc >> 8);
+        buffer[offset + 1] = (byte) pc;
+        buffer[offset + 2] = (byte) (opcode >> 8);
+        buffer[offset + 3] = (byte) opcode;
+        buffer[offset + 4] = (byte) (I >> 8);
+        buffer[offset + 5] = (byte) I;
+        buffer[offset + 6] = (byte) SP;
+        System.arraycopy(registers, 0, buffer, offset + 8, 16);
+        count++;
+    }
+
+    /**
+     * Writes the records in the buffer, oldest first.
+     */
+    public void write(OutputStream out) throws IOException {
+        int size = get_size();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(RECORD_SIZE);
+        data.writeLong(count);
+        data.writeInt(size);
+
+        // Once the buffer wrapped, the oldest record is the next one to be overwritten.
+        int oldest = count > capacity ? (int) (count & (capacity - 1)) : 0;
+        data.write(buffer, oldest * RECORD_SIZE, (size - oldest) * RECORD_SIZE);
+        data.write(buffer, 0, oldest * RECORD_SIZE);
+        data.flush();
+    }
+
+    public void write(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Instructions recorded since start (or clear), including the ones already overwritten.
+     */
+    public long get_count() {
+        return count;
+    }
+
+    /**
+     * Records currently in the buffer.
+     */
+    public int get_size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    public int get_capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the Beeper's samples to a WAV file, for headless runs. The same run always gives the same file.
+ * The sizes in the header are only known at the end, they are filled in by close.
+ */
+public class WavWriter implements AudioSink, AutoCloseable {
+    private static final int HEADER_SIZE = 44;
+
+    private final Path file;
+    private final OutputStream out;
+    private long data_bytes;
+
+    public WavWriter(Path file) throws IOException {
+        this.file = file;
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        out.write(new byte[HEADER_SIZE]);
+    }
+
+    @Override
+    public void write(byte[] samples, int offset, int length) {
+        try {
+            out.write(samples, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        data_bytes += length;
+    }
+
+    /**
+     * Flushes the samples and writes the header.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (data_bytes > 0xFFFFFFFFL - HEADER_SIZE)
+            throw new IOException("Too many samples for a WAV file (" + data_bytes + " bytes): " + file);
+
+        int channels = Beeper.FORMAT.getChannels();
+        int sample_bytes = Beeper.FORMAT.getSampleSizeInBits() / 8;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952);                          // "RIFF"
+        header.putInt((int) (HEADER_SIZE - 8 + data_bytes));
+        header.putInt(0x45564157);                          // "WAVE"
+        header.putInt(0x20746D66);                          // "fmt "
+        header.putInt(16);
+        header.putShort((short) 1);                         // PCM
+        header.putShort((short) channels);
+        header.putInt(Beeper.SAMPLE_RATE);
+        header.putInt(Beeper.SAMPLE_RATE * channels * sample_bytes);
+        header.putShort((short) (channels * sample_bytes));
+        header.putShort((short) Beeper.FORMAT.getSampleSizeInBits());
+        header.putInt(0x61746164);                          // "data"
+        header.putInt((int) data_bytes);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+        }
+    }
+
+    public long get_data_bytes() {
+        return data_bytes;
+    }
+}
@@ -5,26 +5,39 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
-public class Window extends JPanel implements PropertyChangeListener {
-    // Dynamic width, height of the window in pixels. User can resize window.
-    private int width = 600;
-    private int height = 600;
+public class Window extends JPanel implements PropertyChangeListener, DisplaySink {
+    // Initial width, height of the window in pixels. User can resize window, paint() uses the current size.
+    private static final int INITIAL_WIDTH = 600;
+    private static final int INITIAL_HEIGHT = 600;
     private final String title = "CHIP-8 Emulator - By Shlomi Domnenko";
 
-    private Display display;
+    // Frames come from the emulation thread through the exchange, the EDT never reads the live Display.
+    private final FrameExchange frames;
+    private final Renderer renderer = new Renderer();
     private static Logger logger = LoggerFactory.getLogger(Window.class);
 
-    public Window(Display display, Input input) {
-        this.display = display;
+    // No drawing while the frame is hidden or minimized.
+    private volatile boolean hidden = false;
+
+    // Rows of the mode last painted, 32 or 64.
+    private volatile int rows = Display.ROWS;
+
+    // Counts repaints and paints, null unless Metrics.ENABLED.
+    private volatile Metrics metrics;
+
+    public Window(FrameExchange frames, Input input) {
+        this.frames = frames;
 
         JFrame jframe = new JFrame(title);
         jframe.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         jframe.add(this);
         this.setBackground(Color.BLACK);
-        jframe.setSize(width, height);
+        jframe.setSize(INITIAL_WIDTH, INITIAL_HEIGHT);
         jframe.setLocationRelativeTo(null);
         jframe.setVisible(true);
 
@@ -33,8 +46,7 @@ public class Window extends JPanel implements PropertyChangeListener {
         jframe.addComponentListener(new ComponentListener() {
             @Override
             public void componentResized(ComponentEvent e) {
-                width = getWidth();
-                height = getHeight();
+
             }
 
             @Override
@@ -44,42 +56,83 @@ public class Window extends JPanel implements PropertyChangeListener {
 
             @Override
             public void componentShown(ComponentEvent e) {
-
+                set_hidden(false);
             }
 
             @Override
             public void componentHidden(ComponentEvent e) {
+                set_hidden(true);
+            }
+        });
+
+        jframe.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowIconified(WindowEvent e) {
+                set_hidden(true);
+            }
 
+            @Override
+            public void windowDeiconified(WindowEvent e) {
+                set_hidden(false);
             }
         });
     }
 
+    public void set_metrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private void set_hidden(boolean hidden) {
+        this.hidden = hidden;
+        if (!hidden)
+            repaint();
+    }
+
     @Override
     public void paint(Graphics g) {
         super.paint(g);
         //drawGridLines(g); // TODO: Remove
+        if (Metrics.ENABLED && metrics != null)
+            metrics.painted();
+
+        FrameExchange.Frame frame = frames.take();
+        if (frame != null)
+            renderer.update(frame.get_rows(), frame.is_hires());
+        rows = renderer.get_rows();
+
+        // Whole display pixels only, like a grid of equal cells.
+        int col_width = getWidth() / renderer.get_cols();
+        int row_height = getHeight() / renderer.get_rows();
+        // Swing clips to the region given to repaint(), so only the dirty part is actually drawn.
+        renderer.draw(g, col_width * renderer.get_cols(), row_height * renderer.get_rows(), getGraphicsConfiguration());
+    }
 
-        g.setColor(Color.WHITE);
-
-        int col_width = width / Display.COLS;
-        int row_height = height / Display.ROWS;
-
-        for (int row = 0; row < Display.ROWS; row++) {
-            for (int col = 0; col < Display.COLS; col++) {
-                boolean pixel = display.getPixel(row, col);
-                if (!pixel)
-                    continue;
-                int x = col * col_width;
-                int y = row * row_height;
-                g.fillRect(x, y, col_width, row_height);
-            }
+    /**
+     * Repaints only the screen region covering the changed rows. May be called from any thread.
+     * The frame itself was published to the exchange just before.
+     */
+    @Override
+    public void present(long dirty_rows) {
+        if (hidden)
+            return;
+        if (Metrics.ENABLED && metrics != null)
+            metrics.repaint_requested();
+        // The resolution changed, or everything changed.
+        if (dirty_rows == -1L) {
+            repaint();
+            return;
         }
+
+        int first_row = Long.numberOfTrailingZeros(dirty_rows);
+        int last_row = 63 - Long.numberOfLeadingZeros(dirty_rows);
+        int row_height = getHeight() / rows;
+        repaint(0, first_row * row_height, getWidth(), (last_row - first_row + 1) * row_height);
     }
 
     private void drawGridLines(Graphics g) {
         g.setColor(Color.RED);
-        int col_width = width / Display.COLS;
-        int row_height = height / Display.ROWS;
+        int col_width = getWidth() / Display.COLS;
+        int row_height = getHeight() / Display.ROWS;
 
         for (int row = 0; row < Display.ROWS; row++) {
             g.drawLine(0, row * row_height, Display.COLS * col_width, row * row_height);
@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The emulation hot path allocates nothing once warmed up: instructions, timers, key polling and frame presenting.
+ * The warm up lets the JIT settle, the JVM itself allocates a few hundred bytes on the thread while compiling.
+ */
+public class AllocationTest {
+    private static final int INSTRUCTIONS_PER_FRAME = 10;
+    private static final int WARMUP_FRAMES = 200_000;
+    // 5 million instructions
+    private static final int MEASURED_FRAMES = 500_000;
+
+    private static final String[] ROMS = {"other_roms/pong2.ch8", "other_roms/tetris.ch8", "other_roms/invaders.ch8"};
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void execute_and_tick_timers_allocate_nothing() throws Exception {
+        for (String rom : ROMS) {
+            byte[] program = Headless.load_rom(rom);
+            CPU cpu = new CPU(program, program.length, new Display(), new Input());
+            for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+                cpu.execute(INSTRUCTIONS_PER_FRAME);
+                cpu.tick_timers();
+            }
+
+            long start = threads.getCurrentThreadAllocatedBytes();
+            for (int frame = 0; frame < MEASURED_FRAMES; frame++) {
+                cpu.execute(INSTRUCTIONS_PER_FRAME);
+                cpu.tick_timers();
+            }
+            assertEquals(0, threads.getCurrentThreadAllocatedBytes() - start, rom);
+        }
+    }
+
+    @Test
+    public void scheduler_frames_allocate_nothing() throws Exception {
+        for (String rom : ROMS) {
+            byte[] program = Headless.load_rom(rom);
+            Display display = new Display();
+            CPU cpu = new CPU(program, program.length, display, new Input());
+            FramePresenter presenter = new FramePresenter(display, DisplaySink.NONE);
+            Scheduler scheduler = new Scheduler(cpu, cpu, presenter, INSTRUCTIONS_PER_FRAME);
+            scheduler.run_frames(WARMUP_FRAMES);
+
+            long start = threads.getCurrentThreadAllocatedBytes();
+            scheduler.run_frames(MEASURED_FRAMES);
+            assertEquals(0, threads.getCurrentThreadAllocatedBytes() - start, rom);
+        }
+    }
+}
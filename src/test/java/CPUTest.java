@@ -0,0 +1,74 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CPUTest {
+    /**
+     * Sprite data, BCD digits and big font digits are read from I on, and wrap around the end of the 64 KB memory.
+     */
+    @Test
+    public void reads_and_writes_from_i_wrap_around_memory() {
+        byte[] program = {
+                (byte) 0xF0, 0x00, (byte) 0xFF, (byte) 0xFF, // LD I, 0xFFFF
+                (byte) 0xD0, 0x12,                           // DRW V0, V1, 2
+                (byte) 0x00, (byte) 0xFF,                    // HIGH
+                (byte) 0xD0, 0x10,                           // DRW V0, V1, 0 (16x16)
+                (byte) 0x62, (byte) 0xFF,                    // LD V2, 255
+                (byte) 0xF2, 0x33,                           // LD B, V2
+                (byte) 0x62, 0x0F,                           // LD V2, 15
+                (byte) 0xF2, 0x30,                           // LD HF, V2
+        };
+        Display display = new Display();
+        CPU cpu = new CPU(program, program.length, display, new Input());
+        cpu.poke(0xFFFF, (byte) 0xFF);
+        cpu.poke(0x0000, (byte) 0x80);
+
+        cpu.execute(2);
+        assertEquals(1, display.get_color(0, 7));
+        assertEquals(1, display.get_color(1, 0));
+        assertEquals(0, display.get_color(1, 1));
+
+        cpu.execute(2);
+        cpu.execute(2);
+        assertEquals(2, cpu.read_opcode(0xFFFE) & 0xFF);
+        assertEquals(0x0505, cpu.read_opcode(0x0000));
+
+        cpu.execute(2);
+        assertEquals(CPU.BIG_FONT_ADDRESS + 10 * 15, cpu.get_i());
+    }
+
+    /**
+     * PC covers the whole 64 KB: a program runs on past 0x7FFF, and an opcode at 0xFFFF wraps around to 0x0000.
+     */
+    @Test
+    public void pc_runs_through_64_kb() {
+        byte[] program = new byte[0x8000 - CPU.PROGRAM_START + 6];
+        for (int i = 0; i < program.length - 6; i += 2) {
+            program[i] = 0x70;                                       // ADD V0, 1
+            program[i + 1] = 0x01;
+        }
+        byte[] tail = {0x61, 0x42, (byte) 0xA3, 0x00, (byte) 0xF1, 0x55}; // LD V1, 0x42; LD I, 0x300; LD [I], V1
+        System.arraycopy(tail, 0, program, program.length - 6, 6);
+        int instructions = program.length / 2;
+
+        for (String engine : new String[]{"interpreter", "cache", "recompiler"}) {
+            CPU cpu = new CPU(program, program.length, new Display(), new Input());
+            ExecutionEngine executor = switch (engine) {
+                case "cache" -> new DecodeCache(cpu);
+                case "recompiler" -> new Recompiler(cpu);
+                default -> cpu;
+            };
+            assertEquals(instructions, executor.execute(instructions), engine);
+            assertEquals(0x8006, cpu.get_pc(), engine);
+            assertEquals(0x42, cpu.read_opcode(0x300) & 0xFF, engine);
+        }
+
+        CPU cpu = new CPU(program, program.length, new Display(), new Input());
+        cpu.poke(0xFFFF, (byte) 0x61);                               // LD V1, 0x23
+        cpu.poke(0x0000, (byte) 0x23);
+        cpu.set_pc(0xFFFF);
+        cpu.execute(1);
+        assertEquals(0x0001, cpu.get_pc());
+        assertEquals(0x6123, cpu.read_opcode(0xFFFF));
+    }
+}
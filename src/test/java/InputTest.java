@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JPanel;
+import java.awt.Component;
+import java.awt.event.KeyEvent;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InputTest {
+    private final Component source = new JPanel();
+
+    /**
+     * A full queue never leaves a key down: a release that doesn't fit is applied once the queue is drained,
+     * and a press that doesn't fit is taken again from the next key repeat.
+     */
+    @Test
+    public void full_queue_keeps_keys_consistent() {
+        Input input = new Input();
+        boolean[] keypad = new boolean[16];
+
+        // Key 5 (W) goes down, then taps of key 1 fill the queue.
+        press(input, KeyEvent.VK_W);
+        for (int i = 0; i < 255; i++) {
+            if (i % 2 == 0)
+                press(input, KeyEvent.VK_1);
+            else
+                release(input, KeyEvent.VK_1);
+        }
+        release(input, KeyEvent.VK_W);
+        press(input, KeyEvent.VK_E);
+
+        drain(input, keypad);
+        assertFalse(keypad[5], "released key stuck down");
+        assertFalse(keypad[6]);
+
+        // Key repeat of the dropped press.
+        press(input, KeyEvent.VK_E);
+        drain(input, keypad);
+        assertTrue(keypad[6]);
+    }
+
+    /**
+     * Pressing a key again before its pending release was applied keeps it down.
+     */
+    @Test
+    public void press_cancels_pending_release() {
+        Input input = new Input();
+        boolean[] keypad = new boolean[16];
+
+        press(input, KeyEvent.VK_W);
+        for (int i = 0; i < 255; i++) {
+            if (i % 2 == 0)
+                press(input, KeyEvent.VK_1);
+            else
+                release(input, KeyEvent.VK_1);
+        }
+        release(input, KeyEvent.VK_W);
+        press(input, KeyEvent.VK_W);
+
+        drain(input, keypad);
+        assertTrue(keypad[5]);
+        release(input, KeyEvent.VK_W);
+        drain(input, keypad);
+        assertFalse(keypad[5]);
+    }
+
+    /**
+     * A movie replayed in the middle of a run starts at its own frame 0, not at the frame count of the run.
+     */
+    @Test
+    public void replay_starts_at_current_frame() throws Exception {
+        byte[] program = Headless.load_rom("other_roms/tetris.ch8");
+        Display display = new Display();
+        CPU cpu = new CPU(program, program.length, display, new Input());
+        Scheduler scheduler = new Scheduler(cpu, cpu, new FramePresenter(display, DisplaySink.NONE), 10);
+        InputMovie movie = new InputMovie(0, 10);
+        movie.record(5, 3, true);
+
+        scheduler.run_frames(100);
+        scheduler.set_replay(movie);
+        scheduler.run_frames(5);
+        assertFalse(cpu.is_key_pressed(3));
+        scheduler.run_frames(1);
+        assertTrue(cpu.is_key_pressed(3));
+    }
+
+    private void press(Input input, int key_code) {
+        input.keyPressed(new KeyEvent(source, KeyEvent.KEY_PRESSED, 0, 0, key_code, KeyEvent.CHAR_UNDEFINED));
+    }
+
+    private void release(Input input, int key_code) {
+        input.keyReleased(new KeyEvent(source, KeyEvent.KEY_RELEASED, 0, 0, key_code, KeyEvent.CHAR_UNDEFINED));
+    }
+
+    // One poll per frame, a key changes at most once per frame.
+    private static void drain(Input input, boolean[] keypad) {
+        for (int frame = 0; frame < 1000; frame++)
+            input.poll(keypad);
+    }
+}
@@ -0,0 +1,41 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecompilerTest {
+    private static final int FRAMES = 250;
+
+    /**
+     * A restore replaces RAM without the program writing to it: the blocks are recompiled every time,
+     * they never end up interpreted for having been invalidated too often.
+     */
+    @Test
+    public void restores_keep_running_blocks() throws Exception {
+        byte[] program = Headless.load_rom("other_roms/tetris.ch8");
+        Display display = new Display();
+        CPU cpu = new CPU(program, program.length, display, new Input());
+        Recompiler recompiler = new Recompiler(cpu);
+        Scheduler scheduler = new Scheduler(cpu, recompiler, new FramePresenter(display, DisplaySink.NONE), 10);
+        SaveState state = SaveState.of(cpu);
+
+        long first_block_runs = -1;
+        long first_interpreted = -1;
+        for (int round = 0; round < 4 * Recompiler.MAX_RECOMPILES; round++) {
+            state.restore(cpu);
+            long block_runs = recompiler.get_block_runs();
+            long interpreted = recompiler.get_interpreted_instructions();
+            scheduler.run_frames(FRAMES);
+            block_runs = recompiler.get_block_runs() - block_runs;
+            interpreted = recompiler.get_interpreted_instructions() - interpreted;
+
+            if (round == 0) {
+                assertTrue(block_runs > 0);
+                first_block_runs = block_runs;
+                first_interpreted = interpreted;
+            }
+            assertEquals(first_block_runs, block_runs, "block runs of round " + round);
+            assertEquals(first_interpreted, interpreted, "interpreted instructions of round " + round);
+        }
+    }
+}
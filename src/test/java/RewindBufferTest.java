@@ -0,0 +1,79 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RewindBufferTest {
+    /**
+     * Once full, the buffer drops a keyframe interval at a time, never the whole buffer,
+     * even when asked for an interval longer than the capacity.
+     */
+    @Test
+    public void full_buffer_keeps_all_but_one_interval() throws Exception {
+        int[][] configurations = {{60, 180}, {1, 180}, {2, 180}, {600, 180}, {10, 3}, {7, 7}};
+        for (int[] configuration : configurations) {
+            int capacity = configuration[0];
+            RewindBuffer buffer = new RewindBuffer(capacity, configuration[1]);
+            int interval = buffer.get_keyframe_interval();
+            assertTrue(interval >= 1 && interval <= Math.max(1, capacity / 2), "interval " + interval);
+
+            byte[] program = Headless.load_rom("other_roms/tetris.ch8");
+            CPU cpu = new CPU(program, program.length, new Display(), new Input());
+            boolean filled = false;
+            for (int frame = 0; frame < 5 * capacity + 400; frame++) {
+                cpu.execute(10);
+                cpu.tick_timers();
+                buffer.push(cpu);
+                filled |= buffer.get_size() == capacity;
+                if (filled)
+                    assertTrue(buffer.get_size() >= capacity - interval,
+                            "size " + buffer.get_size() + " of " + capacity + " at frame " + frame);
+            }
+            assertTrue(filled);
+        }
+    }
+
+    /**
+     * Once every slot has been used, pushing reuses the buffers: the footprint doesn't change anymore.
+     */
+    @Test
+    public void full_buffer_reuses_its_buffers() throws Exception {
+        byte[] program = Headless.load_rom("other_roms/tetris.ch8");
+        CPU cpu = new CPU(program, program.length, new Display(), new Input());
+        RewindBuffer buffer = new RewindBuffer(70, 30);
+        long footprint = 0;
+        for (int frame = 0; frame < 2000; frame++) {
+            cpu.execute(10);
+            cpu.tick_timers();
+            buffer.push(cpu);
+            if (frame == 1000)
+                footprint = buffer.get_footprint_bytes();
+        }
+        assertEquals(footprint, buffer.get_footprint_bytes());
+        assertTrue(footprint < 70L * SaveState.SIZE, "footprint " + footprint);
+    }
+
+    /**
+     * Rewinding restores the exact state of an earlier frame.
+     */
+    @Test
+    public void rewind_restores_earlier_frame() throws Exception {
+        byte[] program = Headless.load_rom("other_roms/tetris.ch8");
+        Display display = new Display();
+        CPU cpu = new CPU(program, program.length, display, new Input());
+        RewindBuffer buffer = new RewindBuffer(60, 180);
+        SaveState expected = new SaveState();
+        for (int frame = 0; frame < 100; frame++) {
+            cpu.execute(10);
+            cpu.tick_timers();
+            buffer.push(cpu);
+            if (frame == 79)
+                expected.capture(cpu);
+        }
+
+        assertEquals(20, buffer.rewind(cpu, 20));
+        SaveState actual = SaveState.of(cpu);
+        assertArrayEquals(expected.get_data(), actual.get_data());
+    }
+}